@@ -0,0 +1,54 @@
+package net.anthavio.aspect.benchmark;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.aspect.ApiPolicyAspect;
+import net.anthavio.aspect.ApiPolicyOverride;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ApiPolicyAspect overhead of System.out access. @ApiPolicyOverride baseline (not advised) against advised access
+ * with ApiPolicyAspect logger OFF and WARN. Nothing is actually printed.
+ *
+ * @author martin.vanek
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiPolicyBenchmark {
+
+	@Param({ "OFF", "WARN" })
+	public String level;
+
+	@Setup
+	public void setup() {
+		Levels.set(ApiPolicyAspect.class.getName(), level);
+	}
+
+	@Benchmark
+	@ApiPolicyOverride
+	public PrintStream baselineSystemOut() {
+		return System.out;
+	}
+
+	@Benchmark
+	public PrintStream advisedSystemOut() {
+		return System.out;
+	}
+}
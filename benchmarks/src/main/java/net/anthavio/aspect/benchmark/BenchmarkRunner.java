@@ -0,0 +1,31 @@
+package net.anthavio.aspect.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with GC profiler (allocated bytes per operation) for 1, 2, 4,... up to maxThreads threads
+ * to expose contention. Results of every thread count are also written into jmh-threads-N.json
+ *
+ * java -cp target/benchmarks.jar net.anthavio.aspect.benchmark.BenchmarkRunner [maxThreads] [benchmark regexp]
+ *
+ * @author vanek
+ *
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		String include = args.length > 1 ? args[1] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+		for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(threads * 2, maxThreads)
+				: threads + 1) {
+			Options options = new OptionsBuilder().include(include).threads(threads).addProfiler(GCProfiler.class)
+					.resultFormat(ResultFormatType.JSON).result("jmh-threads-" + threads + ".json").build();
+			new Runner(options).run();
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package net.anthavio.aspect.benchmark;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+/**
+ * Formats message (as every real appender does) and throws it away
+ *
+ * @author vanek
+ *
+ */
+public class DiscardingAppender extends AppenderBase<ILoggingEvent> {
+
+	@Override
+	protected void append(ILoggingEvent event) {
+		event.getFormattedMessage();
+	}
+}
@@ -0,0 +1,23 @@
+package net.anthavio.aspect.benchmark;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * @author vanek
+ *
+ */
+final class Levels {
+
+	private Levels() {
+	}
+
+	/**
+	 * Sets level of logger and all its descendants without own level (nested classes are descendants too)
+	 */
+	static void set(String logger, String level) {
+		((Logger) LoggerFactory.getLogger(logger)).setLevel(Level.toLevel(level));
+	}
+}
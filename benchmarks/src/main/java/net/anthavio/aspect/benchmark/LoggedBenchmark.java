@@ -0,0 +1,125 @@
+package net.anthavio.aspect.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.aspect.Logged;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LogAspect overhead. Unwoven baseline against @Logged method and constructor, with and without statistics,
+ * for logger levels OFF (nothing logged), INFO (parameter types) and DEBUG (parameter values).
+ *
+ * State is shared by all benchmark threads, so statistics counters are contended with -t N.
+ *
+ * @author vanek
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggedBenchmark {
+
+	@Param({ "OFF", "INFO", "DEBUG" })
+	public String level;
+
+	private final Target target = new Target();
+
+	private String text = "benchmark";
+
+	private int number = 42;
+
+	@Setup
+	public void setup() {
+		Levels.set(LoggedBenchmark.class.getName(), level); //nested classes too
+	}
+
+	@Benchmark
+	public int baselineMethod() {
+		return target.plain(text, number);
+	}
+
+	@Benchmark
+	public int loggedMethod() {
+		return target.logged(text, number);
+	}
+
+	@Benchmark
+	public int loggedStatisticsMethod() {
+		return target.loggedStatistics(text, number);
+	}
+
+	@Benchmark
+	public Object baselineConstructor() {
+		return new Plain(text, number);
+	}
+
+	@Benchmark
+	public Object loggedConstructor() {
+		return new LoggedConstructor(text, number);
+	}
+
+	@Benchmark
+	public Object loggedStatisticsConstructor() {
+		return new LoggedStatisticsConstructor(text, number);
+	}
+
+	public static class Target {
+
+		public int plain(String text, int number) {
+			return text.length() + number;
+		}
+
+		@Logged
+		public int logged(String text, int number) {
+			return text.length() + number;
+		}
+
+		@Logged(statistics = true)
+		public int loggedStatistics(String text, int number) {
+			return text.length() + number;
+		}
+	}
+
+	public static class Plain {
+
+		final int value;
+
+		public Plain(String text, int number) {
+			this.value = text.length() + number;
+		}
+	}
+
+	public static class LoggedConstructor {
+
+		final int value;
+
+		@Logged
+		public LoggedConstructor(String text, int number) {
+			this.value = text.length() + number;
+		}
+	}
+
+	public static class LoggedStatisticsConstructor {
+
+		final int value;
+
+		@Logged(statistics = true)
+		public LoggedStatisticsConstructor(String text, int number) {
+			this.value = text.length() + number;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package net.anthavio.aspect.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.aspect.NullCheck;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * NullCheckAspect overhead. Unwoven baseline against methods with 1, 4 and 8 @NullCheck parameters
+ *
+ * @author martin.vanek
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NullCheckBenchmark {
+
+	private final Target target = new Target();
+
+	private Object a = "a", b = "b", c = "c", d = "d", e = "e", f = "f", g = "g", h = "h";
+
+	@Benchmark
+	public int baseline1() {
+		return target.plain1(a);
+	}
+
+	@Benchmark
+	public int checked1() {
+		return target.checked1(a);
+	}
+
+	@Benchmark
+	public int baseline4() {
+		return target.plain4(a, b, c, d);
+	}
+
+	@Benchmark
+	public int checked4() {
+		return target.checked4(a, b, c, d);
+	}
+
+	@Benchmark
+	public int baseline8() {
+		return target.plain8(a, b, c, d, e, f, g, h);
+	}
+
+	@Benchmark
+	public int checked8() {
+		return target.checked8(a, b, c, d, e, f, g, h);
+	}
+
+	public static class Target {
+
+		public int plain1(Object a) {
+			return a.hashCode();
+		}
+
+		public int checked1(@NullCheck Object a) {
+			return a.hashCode();
+		}
+
+		public int plain4(Object a, Object b, Object c, Object d) {
+			return a.hashCode() + b.hashCode() + c.hashCode() + d.hashCode();
+		}
+
+		public int checked4(@NullCheck Object a, @NullCheck Object b, @NullCheck Object c, @NullCheck Object d) {
+			return a.hashCode() + b.hashCode() + c.hashCode() + d.hashCode();
+		}
+
+		public int plain8(Object a, Object b, Object c, Object d, Object e, Object f, Object g, Object h) {
+			return a.hashCode() + b.hashCode() + c.hashCode() + d.hashCode() + e.hashCode() + f.hashCode() + g.hashCode()
+					+ h.hashCode();
+		}
+
+		public int checked8(@NullCheck Object a, @NullCheck Object b, @NullCheck Object c, @NullCheck Object d,
+				@NullCheck Object e, @NullCheck Object f, @NullCheck Object g, @NullCheck Object h) {
+			return a.hashCode() + b.hashCode() + c.hashCode() + d.hashCode() + e.hashCode() + f.hashCode() + g.hashCode()
+					+ h.hashCode();
+		}
+	}
+}
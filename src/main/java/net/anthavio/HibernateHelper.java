@@ -10,11 +10,36 @@ import org.slf4j.LoggerFactory;
 
 
 /**
+ * Detects uninitialized Hibernate proxies and lazy collections, so logging them does not trigger lazy loading.
+ *
+ * Supports Hibernate 3.x - 6.x package layouts. Classification of runtime class is computed by {@link #classify(Class)}
+ * and it is meant to be cached by caller (LogAspect caches it per class together with rendering information).
+ * Hibernate methods are looked up once and Java 6 has no MethodHandles, so reflective calls remain, but only for
+ * actual proxies and persistent collections.
+ *
  * @author vanek
  *
  */
 public class HibernateHelper {
 
+	/**
+	 * Classification of runtime class of value
+	 */
+	public static enum Kind {
+		/**
+		 * Not a Hibernate class or Hibernate not present
+		 */
+		PLAIN,
+		/**
+		 * org.hibernate.proxy.HibernateProxy
+		 */
+		PROXY,
+		/**
+		 * PersistentCollection
+		 */
+		COLLECTION;
+	}
+
 	private static final Logger log = LoggerFactory.getLogger(HibernateHelper.class);
 
 	public static final String UNACCESSIBLE_VALUE = "???";
@@ -31,6 +56,8 @@ public class HibernateHelper {
 
 	private static Method getIdentifier;
 
+	private static Method getImplementation;
+
 	static {
 		try {
 			/*
@@ -53,15 +80,15 @@ public class HibernateHelper {
 			}
 
 			try {
-				//hibernate 3.x - swap lookup order when Hibernate 4.x became more common
-				hibernateCollectionClass = Class.forName("org.hibernate.collection.PersistentCollection");
+				//hibernate 4.x, 5.x and 6.x
+				hibernateCollectionClass = Class.forName("org.hibernate.collection.spi.PersistentCollection");
 			} catch (ClassNotFoundException cnfx) {
 				try {
-					//hibernate 4.x - swap lookup order when Hibernate 3.x became less common
-					hibernateCollectionClass = Class.forName("org.hibernate.collection.spi.PersistentCollection");
+					//hibernate 3.x
+					hibernateCollectionClass = Class.forName("org.hibernate.collection.PersistentCollection");
 				} catch (ClassNotFoundException cnfx2) {
 					throw new IllegalStateException(
-							"Did not found Hibernate neither 3.x nor 4.x PersistentCollection class");
+							"Did not found Hibernate PersistentCollection class neither 3.x nor 4.x-6.x");
 				}
 			}
 
@@ -69,6 +96,7 @@ public class HibernateHelper {
 
 			Class<?> initializerClass = Class.forName("org.hibernate.proxy.LazyInitializer");
 			getIdentifier = initializerClass.getMethod("getIdentifier", (Class<?>[]) null);
+			getImplementation = initializerClass.getMethod("getImplementation", (Class<?>[]) null);
 
 			// Class<?> collectionClass =
 			// Class.forName("org.hibernate.collection.PersistentCollection");
@@ -89,14 +117,37 @@ public class HibernateHelper {
 		return (hibernateClass != null);
 	}
 
+	/**
+	 * @return PLAIN when Hibernate is not present
+	 */
+	public static Kind classify(Class<?> valueClass) {
+		if (hibernateClass == null) {
+			return Kind.PLAIN;
+		} else if (hibernateProxyClass.isAssignableFrom(valueClass)) {
+			return Kind.PROXY;
+		} else if (hibernateCollectionClass.isAssignableFrom(valueClass)) {
+			return Kind.COLLECTION;
+		} else {
+			return Kind.PLAIN;
+		}
+	}
+
 	/**
 	 * If @param value is HibernateProxy or PersistentCollection
 	 * and it is not initialized (not prefetched or lazy loaded)
 	 * then return only reference identifier
 	 */
 	public static Object getHibernateProxiedValue(Object value) {
-		Class<? extends Object> valueClass = value.getClass();
-		if (hibernateProxyClass.isAssignableFrom(valueClass)) {
+		return getHibernateProxiedValue(value, classify(value.getClass()));
+	}
+
+	/**
+	 * Same as {@link #getHibernateProxiedValue(Object)} with already known (cached) classification of value
+	 * 
+	 * @return value itself or String - reference identifier, &lt;lazy&gt; or {@link #UNACCESSIBLE_VALUE}
+	 */
+	public static Object getHibernateProxiedValue(Object value, Kind kind) {
+		if (kind == Kind.PROXY) {
 			try {
 				boolean initialized = (Boolean) isInitializedMethod.invoke(null, value);
 				if (initialized == false) {
@@ -108,7 +159,7 @@ public class HibernateHelper {
 				log.warn("Failed access hibernate proxy", x);
 				return UNACCESSIBLE_VALUE + x;
 			}
-		} else if (hibernateCollectionClass.isAssignableFrom(valueClass)) {
+		} else if (kind == Kind.COLLECTION) {
 			try {
 				boolean initialized = (Boolean) isInitializedMethod.invoke(null, value);
 				if (initialized == false) {
@@ -122,4 +173,18 @@ public class HibernateHelper {
 
 		return value;
 	}
+
+	/**
+	 * @param proxy initialized HibernateProxy
+	 * @return entity behind the proxy or proxy itself when it cannot be accessed
+	 */
+	public static Object getImplementation(Object proxy) {
+		try {
+			Object lazyInitializer = getHibernateLazyInitializer.invoke(proxy, (Object[]) null);
+			return getImplementation.invoke(lazyInitializer, (Object[]) null);
+		} catch (Exception x) {
+			log.warn("Failed access hibernate proxy", x);
+			return proxy;
+		}
+	}
 }
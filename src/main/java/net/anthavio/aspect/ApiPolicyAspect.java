@@ -75,9 +75,11 @@ public class ApiPolicyAspect {
 	static final String runtimeHaltMessage = "Runtime.halt() call from {joinpoint.sourcelocation.sourcefile}:{joinpoint.sourcelocation.line}";
 
 	@Before("(callRuntimeHalt() || callSystemExit()) && notApiOverrideFlag()")
-	public void adviceRuntimeHaltSystemExit(JoinPoint.EnclosingStaticPart esp, JoinPoint jp) {
+	public void adviceRuntimeHaltSystemExit(JoinPoint.StaticPart jp) {
 		//log before killFlag may force to disable System.exit()
-		log.warn(jp.getSignature() + " acces at " + jp.getSourceLocation());
+		if (log.isWarnEnabled()) {
+			log.warn(jp.getSignature() + " acces at " + jp.getSourceLocation());
+		}
 
 		if (killSwitch) {
 			throw new AccessControlException(jp.getSignature() + " acces at " + jp.getSourceLocation());
@@ -90,13 +92,18 @@ public class ApiPolicyAspect {
 	@DeclareWarning("get(* System.err) && " + pcNotApiOverride)
 	static final String systemErrMessage = "System.err access at {joinpoint.sourcelocation.sourcefile}:{joinpoint.sourcelocation.line}";
 
+	/**
+	 * Static part of join point is created once per access site, full JoinPoint would be allocated on every access
+	 */
 	@Before(value = "(get(* System.out) || get(* System.err)) && notApiOverrideFlag()")
-	public void adviceSystemErrOut(JoinPoint.EnclosingStaticPart esp, JoinPoint jp) {
+	public void adviceSystemErrOut(JoinPoint.StaticPart jp) {
 
 		if (killSwitch) {
 			throw new AccessControlException(jp.getSignature() + " acces at " + jp.getSourceLocation());
 		}
-		log.warn(jp.getSignature() + " acces at " + jp.getSourceLocation());
+		if (log.isWarnEnabled()) {
+			log.warn(jp.getSignature() + " acces at " + jp.getSourceLocation());
+		}
 	}
 
 }
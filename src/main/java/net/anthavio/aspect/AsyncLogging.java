@@ -0,0 +1,297 @@
+package net.anthavio.aspect;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Asynchronous mode of {@link LogAspect}. Calling thread only captures message ingredients into bounded lock-free ring
+ * and single background thread (LogAspect-Async) formats messages and calls SLF4J, so appender I/O and toString()
+ * of immutable values (String, boxed primitives, enums) do not add to method execution time.
+ * Other values are still rendered on calling thread, because they may change before the background thread gets to them.
+ *
+ * Disabled by default. Enable it using {@link #setEnabled(boolean)} or system properties
+ * java -DLogAspect.async=true -DLogAspect.async.capacity=8192 -DLogAspect.async.overflow=drop|block|types com.something.MainClass
+ *
+ * Logging events are created by background thread, so name of calling thread and time of the call are put into MDC
+ * as LogAspect.thread and LogAspect.timestamp (use %X{LogAspect.thread} in logback pattern). Other MDC values are not propagated.
+ *
+ * @author vanek
+ *
+ */
+public final class AsyncLogging {
+
+	/**
+	 * What to do when ring is full
+	 */
+	public enum Overflow {
+		/**
+		 * Discard message and increment dropped counter
+		 */
+		DROP,
+		/**
+		 * Wait until background thread makes room. When background thread is dead, message is logged as with {@link #TYPES}
+		 */
+		BLOCK,
+		/**
+		 * Log message synchronously on calling thread, but with parameter types only, and increment degraded counter.
+		 * Such message may appear before messages still waiting in the ring
+		 */
+		TYPES;
+	}
+
+	public static final String MDC_THREAD = "LogAspect.thread";
+
+	public static final String MDC_TIMESTAMP = "LogAspect.timestamp";
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncLogging.class);
+
+	private static final int DROPPED = 0;
+
+	private static final int DEGRADED = 1;
+
+	private static final StripedCounters counters = new StripedCounters(2);
+
+	static volatile boolean enabled = "true".equals(System.getProperty("LogAspect.async"));
+
+	private static volatile Overflow overflow = parseOverflow(System.getProperty("LogAspect.async.overflow"));
+
+	private AsyncLogging() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Messages already captured are logged even after asynchronous mode is disabled
+	 */
+	public static void setEnabled(boolean enabled) {
+		AsyncLogging.enabled = enabled;
+	}
+
+	/**
+	 * Invalid value is reported and replaced by DROP, so configuration typo does not break every @Logged method
+	 */
+	private static Overflow parseOverflow(String value) {
+		if (value == null) {
+			return Overflow.DROP;
+		}
+		try {
+			return Overflow.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+		} catch (IllegalArgumentException iax) {
+			log.warn("Invalid LogAspect.async.overflow " + value + ". Using " + Overflow.DROP);
+			return Overflow.DROP;
+		}
+	}
+
+	public static Overflow getOverflow() {
+		return overflow;
+	}
+
+	public static void setOverflow(Overflow overflow) {
+		if (overflow == null) {
+			throw new IllegalArgumentException("Null overflow");
+		}
+		AsyncLogging.overflow = overflow;
+	}
+
+	/**
+	 * @return number of messages discarded because of full ring ({@link Overflow#DROP})
+	 */
+	public static long getDropped() {
+		return counters.sum(DROPPED);
+	}
+
+	/**
+	 * @return number of messages logged synchronously because of full ring ({@link Overflow#TYPES})
+	 */
+	public static long getDegraded() {
+		return counters.sum(DEGRADED);
+	}
+
+	/**
+	 * @return number of messages waiting for background thread
+	 */
+	public static long getPending() {
+		return ring().enqueued() - ring().dequeued();
+	}
+
+	public static int getCapacity() {
+		return ring().capacity();
+	}
+
+	public static void resetCounters() {
+		counters.reset();
+	}
+
+	/**
+	 * Waits until all messages captured before this call are logged
+	 *
+	 * @return false when timeout elapsed first
+	 */
+	public static boolean flush(long timeout, TimeUnit unit) {
+		LogEventRing ring = ring();
+		long target = ring.enqueued();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (ring.dequeued() < target) {
+			if (System.nanoTime() - deadline >= 0) {
+				return false;
+			}
+			LockSupport.unpark(Holder.consumer);
+			LockSupport.parkNanos(100000);
+		}
+		return true;
+	}
+
+	static void enter(LogPlan plan, Object[] args, boolean logValues) {
+		Object[] captured = LogEvent.captureArgs(plan, args, logValues);
+		LogEvent event = claim();
+		if (event != null) {
+			event.enter(plan, captured, logValues);
+			publish(event);
+		} else if (overflow != Overflow.DROP) {
+			counters.add(DEGRADED, 1);
+			LogAspect.print(LogAspect.buildEnterMessage(plan, args, false), plan.logger);
+		}
+	}
+
+	static void exit(LogPlan plan, Object retVal, long execNanos, boolean logValue) {
+		Object captured = LogEvent.captureRetVal(plan, retVal, logValue);
+		LogEvent event = claim();
+		if (event != null) {
+			event.exit(plan, captured, execNanos, logValue);
+			publish(event);
+		} else if (overflow != Overflow.DROP) {
+			counters.add(DEGRADED, 1);
+			LogAspect.print(LogAspect.buildExitMessage(plan, false, execNanos, retVal), plan.logger);
+		}
+	}
+
+	static void slow(LogPlan plan, Object[] args, Object retVal, long execNanos, boolean logValues) {
+		Object[] capturedArgs = LogEvent.captureArgs(plan, args, logValues);
+		Object capturedRetVal = LogEvent.captureRetVal(plan, retVal, logValues);
+		LogEvent event = claim();
+		if (event != null) {
+			event.slow(plan, capturedArgs, capturedRetVal, execNanos, logValues);
+			publish(event);
+		} else if (overflow != Overflow.DROP) {
+			counters.add(DEGRADED, 1);
+			LogAspect.print(LogAspect.buildSlowMessage(plan, args, false, execNanos, retVal), plan.logger);
+		}
+	}
+
+	static void error(LogPlan plan, Throwable exception, long execNanos) {
+		LogEvent event = claim();
+		if (event != null) {
+			event.error(plan, exception, execNanos);
+			publish(event);
+		} else if (overflow != Overflow.DROP) {
+			counters.add(DEGRADED, 1);
+			LogAspect.printException(plan, execNanos, exception);
+		}
+	}
+
+	/**
+	 * @return claimed slot or null when ring is full and message should not be enqueued (dropped is already counted)
+	 * or logged synchronously with types (background thread is dead when blocking)
+	 */
+	private static LogEvent claim() {
+		LogEventRing ring = ring();
+		LogEvent event = ring.claim();
+		if (event == null) {
+			Overflow overflow = AsyncLogging.overflow;
+			if (overflow == Overflow.BLOCK) {
+				while ((event = ring.claim()) == null) {
+					if (!Holder.consumer.isAlive()) {
+						return null;
+					}
+					LockSupport.unpark(Holder.consumer);
+					LockSupport.parkNanos(10000);
+				}
+			} else if (overflow == Overflow.DROP) {
+				counters.add(DROPPED, 1);
+			}
+		}
+		return event;
+	}
+
+	private static void publish(LogEvent event) {
+		Holder.ring.publish(event);
+		if (Holder.consumerParked) {
+			LockSupport.unpark(Holder.consumer);
+		}
+	}
+
+	private static LogEventRing ring() {
+		return Holder.ring;
+	}
+
+	/**
+	 * Consumer loop. Parks when ring is empty and producers unpark it
+	 */
+	private static void consume(LogEventRing ring) {
+		while (true) {
+			LogEvent event = ring.peek();
+			if (event != null) {
+				dispatch(event);
+				ring.release(event);
+			} else {
+				Holder.consumerParked = true;
+				if (ring.peek() == null) {
+					LockSupport.parkNanos(ring, 10000000);
+				}
+				Holder.consumerParked = false;
+			}
+		}
+	}
+
+	/**
+	 * Throwable is caught, so failing toString() or appender (StackOverflowError...) does not kill the consumer thread
+	 */
+	private static void dispatch(LogEvent event) {
+		try {
+			MDC.put(MDC_THREAD, event.thread.getName());
+			MDC.put(MDC_TIMESTAMP, String.valueOf(event.timestamp));
+			event.dispatch();
+		} catch (Throwable x) {
+			log.warn("Failed to log message of " + event.plan.logger.getName() + "." + event.plan.name, x);
+		}
+	}
+
+	/**
+	 * Lazy initialization holder idiom. Ring and consumer thread are created with first asynchronous message
+	 */
+	private static class Holder {
+
+		static final LogEventRing ring = new LogEventRing(Integer.getInteger("LogAspect.async.capacity", 8192));
+
+		static volatile boolean consumerParked;
+
+		static final Thread consumer;
+
+		static {
+			consumer = Background.daemonFactory("LogAspect-Async").newThread(new Runnable() {
+
+				@Override
+				public void run() {
+					consume(ring);
+				}
+			});
+			consumer.start();
+
+			//JVM exit - log what is still in the ring
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					flush(1, TimeUnit.SECONDS);
+				}
+			}, "LogAspect-Async-Shutdown"));
+		}
+	}
+}
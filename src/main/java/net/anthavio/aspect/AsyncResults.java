@@ -0,0 +1,236 @@
+package net.anthavio.aspect;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Completion callbacks for asynchronous results of @Logged methods, so {@link LogAspect} can stop the clock when result
+ * completes instead of when it is returned.
+ *
+ * Supported results are java.util.concurrent.CompletionStage (CompletableFuture) and Guava ListenableFuture. Both are
+ * accessed reflectively, so neither Java 8 nor Guava is required. Callback is registered without blocking and runs in
+ * the thread completing the result (or in the caller when result is already complete). No threads are created.
+ *
+ * Plain Future cannot be observed without blocking, so its execution time is still time to return.
+ *
+ * @author vanek
+ *
+ */
+final class AsyncResults {
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncResults.class);
+
+	private static final String LISTENABLE_FUTURE = "com.google.common.util.concurrent.ListenableFuture";
+
+	private static enum Kind {
+		NONE, STAGE, LISTENABLE
+	}
+
+	/**
+	 * null before Java 8
+	 */
+	private static final Class<?> COMPLETION_STAGE = load("java.util.concurrent.CompletionStage");
+
+	private static final Method WHEN_COMPLETE;
+
+	/**
+	 * java.util.function.BiConsumer implemented by Proxy of {@link Completion}
+	 */
+	private static final Class<?>[] CONSUMER;
+
+	private static final Executor DIRECT = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private static final WeakClassCache<Kind> kinds = new WeakClassCache<Kind>();
+
+	/**
+	 * ListenableFuture.addListener resolved once per result class. Method references ListenableFuture class, which is
+	 * usually loaded by the same ClassLoader as result class. Soft reference does not keep class cached in
+	 * WeakClassCache reachable
+	 */
+	private static final WeakClassCache<SoftReference<Method>> listeners = new WeakClassCache<SoftReference<Method>>();
+
+	static {
+		Method whenComplete = null;
+		Class<?>[] consumer = null;
+		Class<?> biConsumer = load("java.util.function.BiConsumer");
+		if (COMPLETION_STAGE != null && biConsumer != null) {
+			try {
+				whenComplete = COMPLETION_STAGE.getMethod("whenComplete", biConsumer);
+				consumer = new Class<?>[] { biConsumer };
+			} catch (Exception x) {
+				log.warn("CompletionStage results will be timed synchronously", x);
+				whenComplete = null;
+				consumer = null;
+			}
+		}
+		WHEN_COMPLETE = whenComplete;
+		CONSUMER = consumer;
+	}
+
+	private AsyncResults() {
+	}
+
+	/**
+	 * Declared return type check done once per join point. Future is included because CompletableFuture or
+	 * ListenableFuture might be returned as Future
+	 *
+	 * @return true when method might return observable asynchronous result
+	 */
+	static boolean isAsyncType(Class<?> returnType) {
+		return Future.class.isAssignableFrom(returnType) || classify(returnType) != Kind.NONE;
+	}
+
+	/**
+	 * Registers completion callback on result
+	 *
+	 * @return false when result is not observable (plain Future) and callback was not registered
+	 */
+	static boolean whenComplete(Object result, Completion completion) {
+		if (result == null) {
+			return false;
+		}
+		Class<?> clazz = result.getClass();
+		Kind kind = kinds.get(clazz);
+		if (kind == null) {
+			kind = classify(clazz);
+			kinds.put(clazz, kind);
+		}
+		try {
+			switch (kind) {
+			case STAGE:
+				WHEN_COMPLETE.invoke(result,
+						Proxy.newProxyInstance(AsyncResults.class.getClassLoader(), CONSUMER, completion));
+				return true;
+			case LISTENABLE:
+				completion.future = (Future<?>) result;
+				addListener(clazz).invoke(result, completion, DIRECT);
+				return true;
+			default:
+				return false;
+			}
+		} catch (Exception x) {
+			//registration failed before any callback could run
+			log.warn("Cannot register completion callback on " + clazz.getName(), x);
+			kinds.put(clazz, Kind.NONE);
+			return false;
+		}
+	}
+
+	private static Method addListener(Class<?> clazz) throws NoSuchMethodException {
+		SoftReference<Method> reference = listeners.get(clazz);
+		Method method = reference != null ? reference.get() : null;
+		if (method == null) {
+			method = findInterface(clazz, LISTENABLE_FUTURE).getMethod("addListener", Runnable.class, Executor.class);
+			listeners.put(clazz, new SoftReference<Method>(method));
+		}
+		return method;
+	}
+
+	private static Kind classify(Class<?> clazz) {
+		if (COMPLETION_STAGE != null && WHEN_COMPLETE != null && COMPLETION_STAGE.isAssignableFrom(clazz)) {
+			return Kind.STAGE;
+		} else if (findInterface(clazz, LISTENABLE_FUTURE) != null) {
+			return Kind.LISTENABLE;
+		} else {
+			return Kind.NONE;
+		}
+	}
+
+	/**
+	 * Interfaces are compared by name, so library might be loaded by any ClassLoader
+	 */
+	private static Class<?> findInterface(Class<?> clazz, String name) {
+		for (Class<?> type = clazz; type != null; type = type.getSuperclass()) {
+			if (type.getName().equals(name)) {
+				return type;
+			}
+			for (Class<?> iface : type.getInterfaces()) {
+				Class<?> found = findInterface(iface, name);
+				if (found != null) {
+					return found;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Class<?> load(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException cnfx) {
+			return null;
+		}
+	}
+
+	/**
+	 * Called exactly once with value or failure of completed result.
+	 * BiConsumer for CompletionStage.whenComplete and Runnable listener for ListenableFuture.addListener
+	 */
+	abstract static class Completion implements InvocationHandler, Runnable {
+
+		private Future<?> future;
+
+		abstract void completed(Object value, Throwable failure);
+
+		/**
+		 * BiConsumer.accept(value, failure)
+		 */
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getDeclaringClass() == Object.class) {
+				if (method.getName().equals("equals")) {
+					return proxy == args[0];
+				} else if (method.getName().equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				} else {
+					return getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+				}
+			}
+			Throwable failure = (Throwable) args[1];
+			//failure of dependent stage is wrapped in CompletionException
+			if (failure != null && failure.getCause() != null
+					&& failure.getClass().getName().equals("java.util.concurrent.CompletionException")) {
+				failure = failure.getCause();
+			}
+			completed(args[0], failure);
+			return null;
+		}
+
+		/**
+		 * ListenableFuture listener. Future is done, so get() does not block
+		 */
+		@Override
+		public void run() {
+			Object value;
+			try {
+				value = future.get();
+			} catch (ExecutionException ex) {
+				completed(null, ex.getCause() != null ? ex.getCause() : ex);
+				return;
+			} catch (CancellationException cx) {
+				completed(null, cx);
+				return;
+			} catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+				completed(null, ix);
+				return;
+			}
+			completed(value, null);
+		}
+	}
+}
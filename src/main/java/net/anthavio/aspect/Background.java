@@ -0,0 +1,51 @@
+package net.anthavio.aspect;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lazily started daemon thread shared by aspect's housekeeping tasks (JMX registration, reporting, ...)
+ * so they never run on (and slow down) application threads. Tasks must be short and must not block.
+ *
+ * @author vanek
+ *
+ */
+final class Background {
+
+	private Background() {
+	}
+
+	/**
+	 * @return shared single thread executor. Created on first use
+	 */
+	static ScheduledExecutorService executor() {
+		return Holder.executor;
+	}
+
+	/**
+	 * @return new daemon thread factory with threads named prefix-N
+	 */
+	static ThreadFactory daemonFactory(final String prefix) {
+		return new ThreadFactory() {
+
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Lazy initialization holder idiom
+	 */
+	private static class Holder {
+
+		static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(daemonFactory("LogAspect"));
+	}
+}
@@ -0,0 +1,77 @@
+package net.anthavio.aspect;
+
+/**
+ * Per thread stack of executing @Logged(statistics = true) methods. Used to compute self time (execution time without
+ * nested @Logged callees) and caller to callee {@link CallStats}.
+ *
+ * Frames are preallocated. Recursion deeper than {@value #MAX_DEPTH} is counted but not tracked, so such executions
+ * report self time equal to total time.
+ *
+ * Every {@link #push(ExecStats)} must be followed by {@link #pop(int, long)} with returned level. Pop resets depth
+ * to that level, so frame left behind by unexpected Throwable is discarded by pop of the caller.
+ *
+ * @author vanek
+ *
+ */
+final class CallStack {
+
+	static final int MAX_DEPTH = 128;
+
+	private static final ThreadLocal<CallStack> stacks = new ThreadLocal<CallStack>() {
+
+		@Override
+		protected CallStack initialValue() {
+			return new CallStack();
+		}
+	};
+
+	private final ExecStats[] frames = new ExecStats[MAX_DEPTH];
+
+	/**
+	 * Sum of total time of nested callees
+	 */
+	private final long[] childNanos = new long[MAX_DEPTH];
+
+	private int depth;
+
+	private CallStack() {
+	}
+
+	static CallStack get() {
+		return stacks.get();
+	}
+
+	/**
+	 * @return level to be passed into {@link #pop(int, long)}
+	 */
+	int push(ExecStats stats) {
+		int level = depth;
+		if (level < MAX_DEPTH) {
+			frames[level] = stats;
+			childNanos[level] = 0;
+		}
+		depth = level + 1;
+		return level;
+	}
+
+	/**
+	 * Removes frame, records edge from caller and adds execution time to caller's children time
+	 *
+	 * @return self time - execNanos minus total time of nested callees
+	 */
+	long pop(int level, long execNanos) {
+		depth = level;
+		if (level >= MAX_DEPTH) {
+			return execNanos;
+		}
+		ExecStats stats = frames[level];
+		frames[level] = null;
+		long selfNanos = execNanos - childNanos[level];
+		if (level > 0) {
+			int parent = level - 1;
+			childNanos[parent] += execNanos;
+			frames[parent].callee(stats).record(execNanos);
+		}
+		return selfNanos;
+	}
+}
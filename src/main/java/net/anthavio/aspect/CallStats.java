@@ -0,0 +1,64 @@
+package net.anthavio.aspect;
+
+import java.io.Serializable;
+
+/**
+ * Statistics of calls from one @Logged(statistics = true) method (caller) into another (callee) - edge of call tree.
+ * See {@link ExecStats#getCallees()}
+ *
+ * @author vanek
+ *
+ */
+public class CallStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Callee name of calls into callees over limit of {@link ExecStats}
+	 */
+	public static final String OTHER = "other";
+
+	private static final int CALLS = 0;
+
+	private static final int TOTAL_NANOS = 1;
+
+	private final String callee;
+
+	private final StripedCounters counters = new StripedCounters(2);
+
+	CallStats(String callee) {
+		this.callee = callee;
+	}
+
+	void record(long execNanos) {
+		counters.add(CALLS, 1, TOTAL_NANOS, execNanos);
+	}
+
+	/**
+	 * @return name of called method - see {@link StatsRegistry}
+	 */
+	public String getCallee() {
+		return callee;
+	}
+
+	public long getCalls() {
+		return counters.sum(CALLS);
+	}
+
+	/**
+	 * @return total time spent in callee when called from caller
+	 */
+	public long getTotalNanos() {
+		return counters.sum(TOTAL_NANOS);
+	}
+
+	public long getAverageNanos() {
+		long calls = getCalls();
+		return calls != 0 ? getTotalNanos() / calls : 0;
+	}
+
+	@Override
+	public String toString() {
+		return callee + " calls=" + getCalls() + ", averageNanos=" + getAverageNanos();
+	}
+}
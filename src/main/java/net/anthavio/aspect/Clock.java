@@ -0,0 +1,177 @@
+package net.anthavio.aspect;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Source of time for {@link LogAspect} execution time measurement.
+ *
+ * Implementation is selected using {@link Logged#clock()} and it must have public no-arg constructor.
+ * Only one instance of every Clock class is created.
+ *
+ * Default clock (for {@link Logged#clock()} left to Clock.class) is {@link Precise} or it can be set using system property
+ * java -DLogAspect.clock=coarse|precise|com.example.MyClock com.something.MainClass
+ *
+ * Invalid configuration is reported and replaced by {@link Precise} (or by default Clock for {@link Logged#clock()}),
+ * so configuration typo does not break every @Logged method.
+ *
+ * @author vanek
+ *
+ */
+public abstract class Clock {
+
+	private static final Logger log = LoggerFactory.getLogger(Clock.class);
+
+	private static final ConcurrentMap<Class<?>, Clock> instances = new ConcurrentHashMap<Class<?>, Clock>();
+
+	static final Clock DEFAULT = parseDefault(System.getProperty("LogAspect.clock"));
+
+	private static Clock parseDefault(String value) {
+		Clock clock = null;
+		if (value == null || "precise".equals(value)) {
+			clock = create(Precise.class);
+		} else if ("coarse".equals(value)) {
+			clock = create(Coarse.class);
+		} else {
+			try {
+				Class<?> clazz = Class.forName(value);
+				if (Clock.class.isAssignableFrom(clazz)) {
+					clock = create(clazz.asSubclass(Clock.class));
+				}
+			} catch (ClassNotFoundException cnfx) {
+				//reported below
+			} catch (LinkageError le) {
+				//reported below
+			}
+		}
+		if (clock == null) {
+			log.warn("Invalid LogAspect.clock " + value + ". Using " + Precise.class.getName());
+			clock = create(Precise.class);
+		}
+		return clock;
+	}
+
+	/**
+	 * @return current value of time source in nanoseconds. Value has no relation to wall-clock time, only differences are meaningful
+	 */
+	public abstract long nanoTime();
+
+	/**
+	 * @return shared instance of clazz or default Clock for Clock.class or for clazz that cannot be instantiated
+	 */
+	static Clock getInstance(Class<? extends Clock> clazz) {
+		if (clazz == Clock.class) {
+			return DEFAULT;
+		}
+		Clock clock = instances.get(clazz);
+		if (clock == null) {
+			clock = create(clazz);
+			if (clock == null) {
+				log.warn("Cannot create Clock " + clazz.getName() + ". Using " + DEFAULT.getClass().getName());
+				clock = DEFAULT;
+			}
+		}
+		return clock;
+	}
+
+	/**
+	 * Racing threads must not create two instances - {@link Coarse} starts thread in constructor
+	 *
+	 * @return null when clazz cannot be instantiated (failure is logged)
+	 */
+	private static synchronized Clock create(Class<? extends Clock> clazz) {
+		Clock clock = instances.get(clazz);
+		if (clock == null) {
+			try {
+				clock = clazz.getConstructor().newInstance();
+			} catch (Exception x) {
+				log.warn("Failed to instantiate Clock " + clazz.getName(), x);
+				return null;
+			} catch (LinkageError le) {
+				log.warn("Failed to instantiate Clock " + clazz.getName(), le);
+				return null;
+			}
+			instances.put(clazz, clock);
+		}
+		return clock;
+	}
+
+	/**
+	 * System.nanoTime() precise time source. Default one.
+	 */
+	public static class Precise extends Clock {
+
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	}
+
+	/**
+	 * Cached System.nanoTime() value refreshed by background daemon thread.
+	 * Reading is just a volatile read, but resolution is only 1 millisecond by default.
+	 * Resolution (positive number of microseconds) can be set using system property
+	 * java -DLogAspect.clock.resolution=500 com.something.MainClass
+	 *
+	 * Use for extremely hot and short methods, where even System.nanoTime() call is noticeable
+	 */
+	public static class Coarse extends Clock implements Runnable {
+
+		private static final long DEFAULT_RESOLUTION_MICROS = 1000;
+
+		private final long resolutionNanos;
+
+		private volatile long nanoTime = System.nanoTime();
+
+		public Coarse() {
+			long resolutionMicros = parseResolution(System.getProperty("LogAspect.clock.resolution"));
+			this.resolutionNanos = TimeUnit.MICROSECONDS.toNanos(resolutionMicros);
+
+			Thread ticker = new Thread(this, "LogAspect-Clock");
+			ticker.setDaemon(true);
+			ticker.start();
+		}
+
+		/**
+		 * Zero or negative resolution would make ticker thread spin, so it is rejected too
+		 */
+		private static long parseResolution(String value) {
+			if (value == null) {
+				return DEFAULT_RESOLUTION_MICROS;
+			}
+			try {
+				long micros = Long.parseLong(value.trim());
+				if (micros > 0) {
+					return micros;
+				}
+			} catch (NumberFormatException nfx) {
+				//reported below
+			}
+			log.warn("Invalid LogAspect.clock.resolution " + value + ". Using " + DEFAULT_RESOLUTION_MICROS);
+			return DEFAULT_RESOLUTION_MICROS;
+		}
+
+		public long getResolutionNanos() {
+			return resolutionNanos;
+		}
+
+		@Override
+		public long nanoTime() {
+			return nanoTime;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				LockSupport.parkNanos(resolutionNanos);
+				nanoTime = System.nanoTime();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+package net.anthavio.aspect;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deduplication of exceptions logged by {@link LogAspect}, so failing dependency does not flood appenders with the same
+ * stack trace from every failing call.
+ *
+ * Fingerprint is @Logged method + exception class + top {@value #FRAMES} stack frames. First occurrence of fingerprint
+ * in window is logged as usual (with stack trace when @Logged(stackTrace = true)). Repeats in the same window are only
+ * counted and summarized by single line per fingerprint at the end of window
+ * <pre>{@code
+ * <!placeOrder java.net.SocketTimeoutException repeated 1234 more times<!
+ * }</pre>
+ * Fingerprints are kept in fixed size table ({@value #TABLE_SIZE} slots, {@value #PROBES} probed). New fingerprint finding
+ * all probed slots taken replaces one and summary of replaced one is logged immediately, so memory is bounded and no count is lost. Statistics count every
+ * exception regardless deduplication. Threads failing with the same new fingerprint at the same moment may all log it.
+ *
+ * Table keeps only names of class, method and exception, so it does not keep classes of redeployed application reachable.
+ *
+ * Disabled by default, every exception is logged. Enable it by setting window using {@link #setWindow(long, TimeUnit)} or
+ * system property (seconds, 0 logs every exception)
+ * java -DLogAspect.exceptions.window=60 com.something.MainClass
+ *
+ * @author vanek
+ *
+ */
+public final class ExceptionFingerprints {
+
+	static final int FRAMES = 5;
+
+	static final int TABLE_SIZE = 1024;
+
+	/**
+	 * Slots searched for fingerprint
+	 */
+	static final int PROBES = 4;
+
+	private static final Logger log = LoggerFactory.getLogger(ExceptionFingerprints.class);
+
+	private static final AtomicReferenceArray<Entry> table = new AtomicReferenceArray<Entry>(TABLE_SIZE);
+
+	private static final AtomicLong suppressed = new AtomicLong();
+
+	private static volatile long windowMillis;
+
+	private static volatile ScheduledFuture<?> summary;
+
+	static {
+		String seconds = System.getProperty("LogAspect.exceptions.window", "0");
+		try {
+			windowMillis = Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(seconds.trim())));
+		} catch (NumberFormatException nfx) {
+			log.warn("Invalid LogAspect.exceptions.window " + seconds + ". Using 0");
+			windowMillis = 0;
+		}
+	}
+
+	private ExceptionFingerprints() {
+	}
+
+	/**
+	 * Summarizes current window and starts new ones with new length. Zero or negative logs every exception
+	 */
+	public static synchronized void setWindow(long window, TimeUnit unit) {
+		report();
+		if (summary != null) {
+			summary.cancel(false);
+			summary = null;
+		}
+		windowMillis = Math.max(0, unit.toMillis(window));
+		for (int i = 0; i < TABLE_SIZE; ++i) {
+			table.set(i, null);
+		}
+	}
+
+	public static long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * @return number of exceptions not logged since start
+	 */
+	public static long getSuppressed() {
+		return suppressed.get();
+	}
+
+	/**
+	 * Logs summary of repeated exceptions now
+	 */
+	public static void report() {
+		for (int i = 0; i < TABLE_SIZE; ++i) {
+			Entry entry = table.get(i);
+			if (entry != null) {
+				entry.report();
+			}
+		}
+	}
+
+	/**
+	 * @return true when exception should be logged, false when it was counted as repeat
+	 */
+	static boolean first(LogPlan plan, Throwable exception) {
+		final long window = windowMillis;
+		if (window <= 0) {
+			return true;
+		}
+		long fingerprint = fingerprint(plan, exception);
+		int index = (int) (fingerprint ^ (fingerprint >>> 32));
+		long now = System.currentTimeMillis();
+		Entry entry = null;
+		int free = -1;
+		for (int i = 0; i < PROBES && entry == null; ++i) {
+			int slot = (index + i) & (TABLE_SIZE - 1);
+			Entry probed = table.get(slot);
+			if (probed == null) {
+				free = free == -1 ? slot : free;
+			} else if (probed.fingerprint == fingerprint) {
+				entry = probed;
+			}
+		}
+		if (entry == null) {
+			Entry evicted = table.getAndSet(free != -1 ? free : index & (TABLE_SIZE - 1), new Entry(fingerprint, plan.className,
+					plan.name, plan.format, exception.getClass().getName(), now));
+			if (evicted != null) {
+				evicted.report();
+			}
+			return true;
+		}
+		long start = entry.windowStart.get();
+		if (now - start >= window && entry.windowStart.compareAndSet(start, now)) {
+			entry.report(); //previous window
+			return true;
+		}
+		entry.repeats.incrementAndGet();
+		suppressed.incrementAndGet();
+		if (summary == null) {
+			schedule(window);
+		}
+		return false;
+	}
+
+	private static synchronized void schedule(long window) {
+		if (summary == null && window == windowMillis) {
+			Runnable task = new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						report();
+					} catch (RuntimeException rx) {
+						log.warn("Exception summary failed", rx);
+					}
+				}
+			};
+			summary = Background.executor().scheduleWithFixedDelay(task, window, window, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Hash of method, exception class and top frames. Colliding fingerprints are treated as the same exception
+	 */
+	static long fingerprint(LogPlan plan, Throwable exception) {
+		long hash = plan.className.hashCode();
+		hash = hash * 0x9E3779B97F4A7C15L + plan.name.hashCode();
+		hash = hash * 0x9E3779B97F4A7C15L + exception.getClass().getName().hashCode();
+		StackTraceElement[] trace = exception.getStackTrace();
+		for (int i = 0; i < trace.length && i < FRAMES; ++i) {
+			hash = hash * 0x9E3779B97F4A7C15L + trace[i].getClassName().hashCode();
+			hash = hash * 0x9E3779B97F4A7C15L + trace[i].getMethodName().hashCode();
+			hash = hash * 0x9E3779B97F4A7C15L + trace[i].getLineNumber();
+		}
+		return hash ^ (hash >>> 29);
+	}
+
+	private static class Entry {
+
+		final long fingerprint;
+
+		final String className;
+
+		final String method;
+
+		final Logged.Format format;
+
+		final String exception;
+
+		final AtomicLong windowStart;
+
+		/**
+		 * Not logged since start of window
+		 */
+		final AtomicLong repeats = new AtomicLong();
+
+		Entry(long fingerprint, String className, String method, Logged.Format format, String exception, long windowStart) {
+			this.fingerprint = fingerprint;
+			this.className = className;
+			this.method = method;
+			this.format = format;
+			this.exception = exception;
+			this.windowStart = new AtomicLong(windowStart);
+		}
+
+		void report() {
+			long count = repeats.getAndSet(0);
+			if (count != 0) {
+				LogAspect.printRepeated(className, method, format, exception, count);
+			}
+		}
+	}
+}
@@ -0,0 +1,608 @@
+package net.anthavio.aspect;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Execution statistics of {@link Logged} method with statistics = true
+ *
+ * Thread safe and lock-free. Counters are striped (see {@link StripedCounters}) so concurrent threads do not contend.
+ * Durations of successful executions and executions ended by exception are recorded into separate {@link LatencyHistogram}s
+ * Last execution/exception values are plain volatile writes - last writer wins.
+ *
+ * Self time is execution time minus time spent in nested @Logged(statistics = true) callees. Calls into those
+ * callees are recorded as {@link CallStats}.
+ *
+ * Beside lifetime totals, executions, exceptions and average duration of the last 1 to 15 minutes are kept in ring of
+ * minute buckets - {@link #getWindow(int)}.
+ *
+ * Memory footprint is fixed - two histograms (2 * 4.8 KB), minute buckets (480 B) and striped counters
+ * (64 B * 2 * available processors, 4 KB max), so ~10-15 KB per method. Every distinct callee adds {@link CallStats} with
+ * its own striped counters (up to ~4 KB). Only first {@value #MAX_CALLEES} callees get their own, calls into others
+ * are summed in single {@link CallStats#OTHER} one, so callees add at most ~70 KB.
+ *
+ * @author vanek
+ *
+ */
+public class ExecStats implements ExecStatsMBean, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int EXECUTIONS = 0;
+
+	private static final int TOTAL_NANOS = 1;
+
+	private static final int EXCEPTIONS = 2;
+
+	private static final int EXCEPTION_NANOS = 3;
+
+	private static final int SELF_NANOS = 4;
+
+	static final int MAX_CALLEES = 16;
+
+	private final String name;
+
+	private final StripedCounters counters = new StripedCounters(5);
+
+	/**
+	 * Keyed by callee name, so evicted callee ExecStats is not kept reachable
+	 */
+	private final ConcurrentMap<String, CallStats> callees = new ConcurrentHashMap<String, CallStats>();
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	private final LatencyHistogram exceptionHistogram = new LatencyHistogram();
+
+	private final SlidingWindow window = new SlidingWindow();
+
+	private final long createdMillis = System.currentTimeMillis();
+
+	/**
+	 * Removed from {@link StatsRegistry}. LogPlan holding it is rebuilt
+	 */
+	volatile boolean evicted;
+
+	private volatile long lastExecutionMillis;
+
+	private volatile long lastExecutionNanos;
+
+	private volatile long lastExceptionMillis;
+
+	private volatile long lastExceptionNanos;
+
+	public ExecStats() {
+		this(null);
+	}
+
+	/**
+	 * @param name method signature - see {@link StatsRegistry}
+	 */
+	public ExecStats(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Record successful execution
+	 *
+	 * @param timestampMillis wall-clock time of execution
+	 * @param execNanos execution duration
+	 */
+	public void execution(long timestampMillis, long execNanos) {
+		execution(timestampMillis, execNanos, execNanos);
+	}
+
+	/**
+	 * Record successful execution
+	 *
+	 * @param timestampMillis wall-clock time of execution
+	 * @param execNanos execution duration
+	 * @param selfNanos execution duration without nested callees
+	 */
+	public void execution(long timestampMillis, long execNanos, long selfNanos) {
+		counters.add(EXECUTIONS, 1, TOTAL_NANOS, execNanos);
+		counters.add(SELF_NANOS, selfNanos);
+		histogram.record(execNanos);
+		window.record(timestampMillis, execNanos, false);
+		lastExecutionMillis = timestampMillis;
+		lastExecutionNanos = execNanos;
+	}
+
+	/**
+	 * Record execution ended by exception. It is counted as execution too
+	 *
+	 * @param timestampMillis wall-clock time of execution
+	 * @param execNanos execution duration
+	 */
+	public void exception(long timestampMillis, long execNanos) {
+		exception(timestampMillis, execNanos, execNanos);
+	}
+
+	/**
+	 * Record execution ended by exception. It is counted as execution too
+	 *
+	 * @param timestampMillis wall-clock time of execution
+	 * @param execNanos execution duration
+	 * @param selfNanos execution duration without nested callees
+	 */
+	public void exception(long timestampMillis, long execNanos, long selfNanos) {
+		counters.add(EXECUTIONS, 1, TOTAL_NANOS, execNanos);
+		counters.add(SELF_NANOS, selfNanos);
+		counters.add(EXCEPTIONS, 1, EXCEPTION_NANOS, execNanos);
+		exceptionHistogram.record(execNanos);
+		window.record(timestampMillis, execNanos, true);
+		lastExecutionMillis = timestampMillis;
+		lastExecutionNanos = execNanos;
+		lastExceptionMillis = timestampMillis;
+		lastExceptionNanos = execNanos;
+	}
+
+	/**
+	 * @return statistics of calls into callee, created on first call, or {@link CallStats#OTHER} ones when there is
+	 * already {@value #MAX_CALLEES} callees. Racing first calls may add few more
+	 */
+	CallStats callee(ExecStats callee) {
+		CallStats stats = callees.get(callee.name);
+		if (stats == null) {
+			String name = callee.name;
+			if (callees.size() >= MAX_CALLEES) {
+				name = CallStats.OTHER;
+				stats = callees.get(name);
+				if (stats != null) {
+					return stats;
+				}
+			}
+			stats = new CallStats(name);
+			CallStats existing = callees.putIfAbsent(name, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Reset all counters to zero
+	 */
+	@Override
+	public void reset() {
+		counters.reset();
+		callees.clear();
+		histogram.reset();
+		exceptionHistogram.reset();
+		window.reset();
+		lastExecutionMillis = 0;
+		lastExecutionNanos = 0;
+		lastExceptionMillis = 0;
+		lastExceptionNanos = 0;
+	}
+
+	/**
+	 * @return executions count including those ended by exception
+	 */
+	@Override
+	public long getExecutions() {
+		return counters.sum(EXECUTIONS);
+	}
+
+	@Override
+	public long getExceptions() {
+		return counters.sum(EXCEPTIONS);
+	}
+
+	/**
+	 * @return sum of all execution durations in nanoseconds
+	 */
+	@Override
+	public long getTotalNanos() {
+		return counters.sum(TOTAL_NANOS);
+	}
+
+	/**
+	 * @return average execution duration in nanoseconds
+	 */
+	@Override
+	public long getAverageNanos() {
+		long executions = getExecutions();
+		return executions != 0 ? getTotalNanos() / executions : 0;
+	}
+
+	/**
+	 * @return sum of all execution durations without nested callees in nanoseconds
+	 */
+	@Override
+	public long getTotalSelfNanos() {
+		return counters.sum(SELF_NANOS);
+	}
+
+	/**
+	 * @return average execution duration without nested callees in nanoseconds
+	 */
+	@Override
+	public long getAverageSelfNanos() {
+		long executions = getExecutions();
+		return executions != 0 ? getTotalSelfNanos() / executions : 0;
+	}
+
+	/**
+	 * @return calls into nested @Logged(statistics = true) methods keyed by callee name
+	 */
+	public Map<String, CallStats> getCallees() {
+		Map<String, CallStats> map = new TreeMap<String, CallStats>();
+		for (CallStats stats : callees.values()) {
+			map.put(stats.getCallee(), stats);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * @return average duration of execution ended by exception in nanoseconds
+	 */
+	@Override
+	public long getAverageExceptionNanos() {
+		long exceptions = getExceptions();
+		return exceptions != 0 ? counters.sum(EXCEPTION_NANOS) / exceptions : 0;
+	}
+
+	/**
+	 * @return durations of successful executions
+	 */
+	public LatencyHistogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * @return durations of executions ended by exception
+	 */
+	public LatencyHistogram getExceptionHistogram() {
+		return exceptionHistogram;
+	}
+
+	/**
+	 * @return duration of successful execution on percentile (0.0 - 100.0) in nanoseconds
+	 */
+	public long getPercentileNanos(double percentile) {
+		return histogram.snapshot().getValueAtPercentile(percentile);
+	}
+
+	/**
+	 * @return longest successful execution in nanoseconds
+	 */
+	@Override
+	public long getMaxNanos() {
+		return histogram.snapshot().getMax();
+	}
+
+	@Override
+	public long getP50Nanos() {
+		return getPercentileNanos(50);
+	}
+
+	@Override
+	public long getP90Nanos() {
+		return getPercentileNanos(90);
+	}
+
+	@Override
+	public long getP99Nanos() {
+		return getPercentileNanos(99);
+	}
+
+	@Override
+	public long getP999Nanos() {
+		return getPercentileNanos(99.9);
+	}
+
+	/**
+	 * @param minutes window length 1 - 15
+	 * @return executions of current minute and minutes - 1 previous ones
+	 */
+	public Window getWindow(int minutes) {
+		return window.sum(minutes, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param minutes window length 1 - 15
+	 * @param nowMillis wall-clock time window ends at
+	 */
+	public Window getWindow(int minutes, long nowMillis) {
+		return window.sum(minutes, nowMillis);
+	}
+
+	@Override
+	public long getExecutions1m() {
+		return getWindow(1).getExecutions();
+	}
+
+	@Override
+	public long getExecutions5m() {
+		return getWindow(5).getExecutions();
+	}
+
+	@Override
+	public long getExecutions15m() {
+		return getWindow(15).getExecutions();
+	}
+
+	@Override
+	public long getExceptions1m() {
+		return getWindow(1).getExceptions();
+	}
+
+	@Override
+	public long getExceptions5m() {
+		return getWindow(5).getExceptions();
+	}
+
+	@Override
+	public long getExceptions15m() {
+		return getWindow(15).getExceptions();
+	}
+
+	@Override
+	public long getAverageNanos1m() {
+		return getWindow(1).getAverageNanos();
+	}
+
+	@Override
+	public long getAverageNanos5m() {
+		return getWindow(5).getAverageNanos();
+	}
+
+	@Override
+	public long getAverageNanos15m() {
+		return getWindow(15).getAverageNanos();
+	}
+
+	/**
+	 * @return immutable copy of current values
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * @return wall-clock time of last execution in milliseconds or 0 if not executed yet
+	 */
+	public long getLastExecutionMillis() {
+		return lastExecutionMillis;
+	}
+
+	/**
+	 * @return wall-clock time of last execution or creation when not executed yet
+	 */
+	long getLastUsedMillis() {
+		return Math.max(lastExecutionMillis, createdMillis);
+	}
+
+	@Override
+	public Date getLastExecutionDate() {
+		long millis = lastExecutionMillis;
+		return millis != 0 ? new Date(millis) : null;
+	}
+
+	/**
+	 * @return duration of last execution in nanoseconds
+	 */
+	@Override
+	public long getLastExecutionNanos() {
+		return lastExecutionNanos;
+	}
+
+	/**
+	 * @return wall-clock time of last execution ended by exception in milliseconds or 0 if not happend yet
+	 */
+	public long getLastExceptionMillis() {
+		return lastExceptionMillis;
+	}
+
+	@Override
+	public Date getLastExceptionDate() {
+		long millis = lastExceptionMillis;
+		return millis != 0 ? new Date(millis) : null;
+	}
+
+	/**
+	 * @return duration of last execution ended by exception in nanoseconds
+	 */
+	@Override
+	public long getLastExceptionNanos() {
+		return lastExceptionNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "ExecStats [name=" + name + ", executions=" + getExecutions() + ", exceptions=" + getExceptions() + ", averageNanos="
+				+ getAverageNanos() + "]";
+	}
+
+	/**
+	 * Executions in last minutes
+	 */
+	public static class Window implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int minutes;
+
+		private final long executions;
+
+		private final long exceptions;
+
+		private final long totalNanos;
+
+		Window(int minutes, long executions, long exceptions, long totalNanos) {
+			this.minutes = minutes;
+			this.executions = executions;
+			this.exceptions = exceptions;
+			this.totalNanos = totalNanos;
+		}
+
+		public int getMinutes() {
+			return minutes;
+		}
+
+		/**
+		 * @return executions count including those ended by exception
+		 */
+		public long getExecutions() {
+			return executions;
+		}
+
+		public long getExceptions() {
+			return exceptions;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getAverageNanos() {
+			return executions != 0 ? totalNanos / executions : 0;
+		}
+
+		@Override
+		public String toString() {
+			return minutes + "m executions=" + executions + ", exceptions=" + exceptions + ", averageNanos=" + getAverageNanos();
+		}
+	}
+
+	/**
+	 * Immutable point in time copy of {@link ExecStats}
+	 */
+	public static class Snapshot implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+
+		private final long executions;
+
+		private final long exceptions;
+
+		private final long totalNanos;
+
+		private final long totalSelfNanos;
+
+		private final Map<String, Long> calleeCalls;
+
+		private final long lastExecutionMillis;
+
+		private final long lastExceptionMillis;
+
+		private final LatencyHistogram.Snapshot histogram;
+
+		private final LatencyHistogram.Snapshot exceptionHistogram;
+
+		private final Window window1m;
+
+		private final Window window5m;
+
+		private final Window window15m;
+
+		Snapshot(ExecStats stats) {
+			this.name = stats.name;
+			this.executions = stats.getExecutions();
+			this.exceptions = stats.getExceptions();
+			this.totalNanos = stats.getTotalNanos();
+			this.totalSelfNanos = stats.getTotalSelfNanos();
+			Map<String, Long> calleeCalls = new TreeMap<String, Long>();
+			for (CallStats callee : stats.callees.values()) {
+				calleeCalls.put(callee.getCallee(), callee.getCalls());
+			}
+			this.calleeCalls = Collections.unmodifiableMap(calleeCalls);
+			this.lastExecutionMillis = stats.lastExecutionMillis;
+			this.lastExceptionMillis = stats.lastExceptionMillis;
+			this.histogram = stats.histogram.snapshot();
+			this.exceptionHistogram = stats.exceptionHistogram.snapshot();
+			long now = System.currentTimeMillis();
+			this.window1m = stats.window.sum(1, now);
+			this.window5m = stats.window.sum(5, now);
+			this.window15m = stats.window.sum(15, now);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getExecutions() {
+			return executions;
+		}
+
+		public long getExceptions() {
+			return exceptions;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getAverageNanos() {
+			return executions != 0 ? totalNanos / executions : 0;
+		}
+
+		public long getTotalSelfNanos() {
+			return totalSelfNanos;
+		}
+
+		public long getAverageSelfNanos() {
+			return executions != 0 ? totalSelfNanos / executions : 0;
+		}
+
+		/**
+		 * @return number of calls into nested @Logged(statistics = true) methods keyed by callee name
+		 */
+		public Map<String, Long> getCalleeCalls() {
+			return calleeCalls;
+		}
+
+		public long getLastExecutionMillis() {
+			return lastExecutionMillis;
+		}
+
+		public long getLastExceptionMillis() {
+			return lastExceptionMillis;
+		}
+
+		/**
+		 * @return durations of successful executions
+		 */
+		public LatencyHistogram.Snapshot getHistogram() {
+			return histogram;
+		}
+
+		/**
+		 * @return durations of executions ended by exception
+		 */
+		public LatencyHistogram.Snapshot getExceptionHistogram() {
+			return exceptionHistogram;
+		}
+
+		public Window getWindow1m() {
+			return window1m;
+		}
+
+		public Window getWindow5m() {
+			return window5m;
+		}
+
+		public Window getWindow15m() {
+			return window15m;
+		}
+
+		@Override
+		public String toString() {
+			return name + " executions=" + executions + ", exceptions=" + exceptions + ", averageNanos=" + getAverageNanos()
+					+ ", " + histogram;
+		}
+	}
+}
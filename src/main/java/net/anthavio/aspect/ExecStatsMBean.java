@@ -0,0 +1,67 @@
+package net.anthavio.aspect;
+
+import java.util.Date;
+
+/**
+ * JMX management interface of {@link ExecStats}. All durations are in nanoseconds
+ * Attributes with 1m, 5m and 15m suffix cover only the last minutes
+ *
+ * @author vanek
+ *
+ */
+public interface ExecStatsMBean {
+
+	String getName();
+
+	long getExecutions();
+
+	long getExceptions();
+
+	long getTotalNanos();
+
+	long getAverageNanos();
+
+	long getTotalSelfNanos();
+
+	long getAverageSelfNanos();
+
+	long getAverageExceptionNanos();
+
+	long getMaxNanos();
+
+	long getP50Nanos();
+
+	long getP90Nanos();
+
+	long getP99Nanos();
+
+	long getP999Nanos();
+
+	Date getLastExecutionDate();
+
+	long getLastExecutionNanos();
+
+	Date getLastExceptionDate();
+
+	long getLastExceptionNanos();
+
+	long getExecutions1m();
+
+	long getExecutions5m();
+
+	long getExecutions15m();
+
+	long getExceptions1m();
+
+	long getExceptions5m();
+
+	long getExceptions15m();
+
+	long getAverageNanos1m();
+
+	long getAverageNanos5m();
+
+	long getAverageNanos15m();
+
+	void reset();
+}
@@ -0,0 +1,87 @@
+package net.anthavio.aspect;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JMX MBean net.anthavio.aspect:type=KillSwitch delegating to {@link LogAspect#setKillSwitch(boolean)} and
+ * {@link LogAspect#setKilledPackages(String...)}. Registered together with statistics MBeans, see {@link StatsRegistry}
+ *
+ * @author vanek
+ *
+ */
+public final class KillSwitch implements KillSwitchMBean {
+
+	static final String OBJECT_NAME = StatsRegistry.JMX_DOMAIN + ":type=KillSwitch";
+
+	private static final Logger log = LoggerFactory.getLogger(KillSwitch.class);
+
+	private KillSwitch() {
+	}
+
+	@Override
+	public boolean isKillSwitch() {
+		return LogAspect.isKillSwitch();
+	}
+
+	@Override
+	public void setKillSwitch(boolean killSwitch) {
+		LogAspect.setKillSwitch(killSwitch);
+	}
+
+	@Override
+	public String getKilledPackages() {
+		StringBuilder sb = new StringBuilder();
+		for (String name : LogAspect.getKilledPackages()) {
+			if (sb.length() != 0) {
+				sb.append(',');
+			}
+			sb.append(name);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void setKilledPackages(String packages) {
+		LogAspect.setKilledPackages(packages.split(","));
+	}
+
+	/**
+	 * Registers MBean on {@link Background} thread, so slow or locked MBeanServer does not stall first @Logged call
+	 * initializing LogAspect. Skipped when JMX is disabled meanwhile
+	 */
+	static void scheduleRegistration() {
+		Background.executor().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				if (StatsRegistry.isJmxEnabled()) {
+					setJmxRegistered(true);
+				}
+			}
+		});
+	}
+
+	static void setJmxRegistered(boolean registered) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(OBJECT_NAME);
+			if (registered && !server.isRegistered(objectName)) {
+				server.registerMBean(new KillSwitch(), objectName);
+			} else if (!registered && server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (InstanceAlreadyExistsException iaex) {
+			//registered concurrently
+		} catch (JMException jmx) {
+			log.warn("Failed to (un)register MBean " + OBJECT_NAME, jmx);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package net.anthavio.aspect;
+
+/**
+ * JMX management interface of {@link LogAspect} kill switch
+ *
+ * @author vanek
+ *
+ */
+public interface KillSwitchMBean {
+
+	boolean isKillSwitch();
+
+	void setKillSwitch(boolean killSwitch);
+
+	/**
+	 * @return comma separated killed packages and classes
+	 */
+	String getKilledPackages();
+
+	void setKilledPackages(String packages);
+}
@@ -0,0 +1,235 @@
+package net.anthavio.aspect;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed memory, log-bucketed histogram of nanosecond durations in spirit of HdrHistogram.
+ *
+ * Every power of two range is split into 16 linear sub-buckets, so reported values are at most 1/16 (6.25%) higher
+ * than recorded ones. Values from 0 up to 2^41 nanoseconds (~36 minutes) are tracked, longer are counted into the last bucket.
+ * Maximum value is tracked exactly.
+ *
+ * Recording is thread safe, lock-free and does not allocate. Memory footprint is {@value #BUCKETS} * 8 bytes (~5 KB)
+ *
+ * @author vanek
+ *
+ */
+public class LatencyHistogram implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int SUB_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private static final int MAX_EXPONENT = 40;
+
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0; //broken clock?
+		}
+		counts.incrementAndGet(index(nanos));
+		long current = max.get();
+		while (nanos > current && !max.compareAndSet(current, nanos)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Adds all values recorded in other histogram into this one
+	 */
+	public void add(LatencyHistogram other) {
+		add(other.snapshot());
+	}
+
+	/**
+	 * Adds all values from snapshot into this histogram
+	 */
+	public void add(Snapshot snapshot) {
+		for (int i = 0; i < BUCKETS; ++i) {
+			if (snapshot.counts[i] != 0) {
+				counts.addAndGet(i, snapshot.counts[i]);
+			}
+		}
+		long current = max.get();
+		while (snapshot.max > current && !max.compareAndSet(current, snapshot.max)) {
+			current = max.get();
+		}
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts.set(i, 0);
+		}
+		max.set(0);
+	}
+
+	/**
+	 * @return immutable copy of current state. Concurrent recording may not be fully visible in the copy
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; ++i) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy, max.get());
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return highest value that falls into bucket
+	 */
+	static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BITS);
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * Immutable point in time copy of {@link LatencyHistogram}
+	 */
+	public static class Snapshot implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long[] counts;
+
+		private final long max;
+
+		private final long count;
+
+		private final long total;
+
+		Snapshot(long[] counts, long max) {
+			this.counts = counts;
+			this.max = max;
+			long count = 0;
+			long total = 0;
+			for (int i = 0; i < counts.length; ++i) {
+				if (counts[i] != 0) {
+					count += counts[i];
+					total += counts[i] * valueOf(i);
+				}
+			}
+			this.count = count;
+			this.total = total;
+		}
+
+		/**
+		 * @return new Snapshot containing values from both
+		 */
+		public Snapshot merge(Snapshot other) {
+			long[] merged = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; ++i) {
+				merged[i] = counts[i] + other.counts[i];
+			}
+			return new Snapshot(merged, Math.max(max, other.max));
+		}
+
+		/**
+		 * Values recorded between previous and this snapshot of the same histogram. Maximum of interval is not tracked,
+		 * highest non empty bucket value is used instead. When histogram was reset in between, this snapshot is returned.
+		 *
+		 * @return new Snapshot containing values recorded since previous
+		 */
+		public Snapshot minus(Snapshot previous) {
+			long[] delta = new long[BUCKETS];
+			int highest = -1;
+			for (int i = 0; i < BUCKETS; ++i) {
+				delta[i] = counts[i] - previous.counts[i];
+				if (delta[i] < 0) {
+					return this; //reset
+				} else if (delta[i] != 0) {
+					highest = i;
+				}
+			}
+			return new Snapshot(delta, highest == -1 ? 0 : valueOf(highest));
+		}
+
+		/**
+		 * @return count of values in bucket
+		 */
+		long bucket(int index) {
+			return counts[index];
+		}
+
+		/**
+		 * @return number of recorded values
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return maximal recorded value
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @return approximate mean computed from bucket values
+		 */
+		public long getMean() {
+			return count != 0 ? total / count : 0;
+		}
+
+		/**
+		 * @param percentile 0.0 - 100.0
+		 * @return value that given percentile of recorded values is lower or equal to
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long target = (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count);
+			if (target < 1) {
+				target = 1;
+			}
+			long cumulative = 0;
+			for (int i = 0; i < counts.length; ++i) {
+				cumulative += counts[i];
+				if (cumulative >= target) {
+					return valueOf(i);
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * @return highest value of bucket, but never more than max. Last bucket collects all bigger values, so max it is
+		 */
+		private long valueOf(int index) {
+			return index == BUCKETS - 1 ? max : Math.min(highestValue(index), max);
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", p50=" + getValueAtPercentile(50) + ", p90=" + getValueAtPercentile(90) + ", p99="
+					+ getValueAtPercentile(99) + ", p999=" + getValueAtPercentile(99.9) + ", max=" + max;
+		}
+	}
+}
@@ -1,22 +1,16 @@
 package net.anthavio.aspect;
 
-import java.io.Serializable;
-import java.lang.reflect.Array;
-import java.util.Collection;
-import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.List;
 
 import net.anthavio.HibernateHelper;
 
-import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.annotation.SuppressAjWarnings;
-import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +20,16 @@ import org.slf4j.LoggerFactory;
  * 
  * On INFO log level, only argument types (class) are logged (exception - null argument is logged every time)
  * On DEBUG log level, argument and return values (toString()) are logged
+ * With statistics = true, execution statistics are collected and published via {@link StatsRegistry}
+ * Messages can be formatted and logged by background thread, see {@link AsyncLogging}
+ * 
+ * Advice can be switched off completely (no logging, no statistics, no arguments copy) for whole application or
+ * for some packages by kill switch. Also available as JMX MBean net.anthavio.aspect:type=KillSwitch
+ * java -DLogAspect.killSwitch=true -DLogAspect.killPackages=com.example.hot,com.example.Chatty com.something.MainClass
+ * 
+ * Precompiled plans are cached per declaring class in weak class keyed cache and do not keep Signatures reachable, so
+ * classes of redeployed application can be unloaded even when aspect lives in shared ClassLoader.
+ * Custom {@link Logged#clock()} or {@link Logged#notTypes()} classes of the application keep it reachable.
  * 
  * @author vanek
  */
@@ -37,10 +41,26 @@ public class LogAspect {
 	private static final String ENTER = ">>";
 	private static final String EXIT = "<<";
 	private static final String ERROR = "<!";
+	private static final String SLOW = "<>";
+
+	/**
+	 * Long.MIN_VALUE has 20 characters
+	 */
+	private static final int MAX_LONG_LENGTH = 20;
 
-	private static final boolean isHibernatePresent = HibernateHelper.isHibernatePresent();
+	private static volatile boolean killSwitch = "true".equals(System.getProperty("LogAspect.killSwitch"));
+
+	static {
+		String packages = System.getProperty("LogAspect.killPackages");
+		if (packages != null) {
+			setKilledPackages(packages.split(","));
+		}
+		if ("true".equals(System.getProperty("LogAspect.jmx"))) {
+			KillSwitch.scheduleRegistration();
+		}
+	}
 
-	private Map<Signature, ExecStats> statsMap = new ConcurrentHashMap<Signature, ExecStats>();
+	private final WeakClassCache<LogPlan.Table> plans = new WeakClassCache<LogPlan.Table>();
 
 	/** All public methods */
 	//@Pointcut("within(net.anthavio..*) && execution(public * *(..))")
@@ -90,63 +110,245 @@ public class LogAspect {
 		return around(pjp, cfg);
 	}
 
+	/**
+	 * Switches advice off (true) or on (false) for all join points immediately
+	 */
+	public static void setKillSwitch(boolean killSwitch) {
+		LogAspect.killSwitch = killSwitch;
+	}
+
+	public static boolean isKillSwitch() {
+		return killSwitch;
+	}
+
+	/**
+	 * Switches advice off for classes in packages (including subpackages) or for classes (including nested ones),
+	 * replacing previously killed ones. Takes effect with next execution of each join point
+	 */
+	public static void setKilledPackages(String... packages) {
+		List<String> killed = new ArrayList<String>();
+		for (String name : packages) {
+			if (name.trim().length() != 0) {
+				killed.add(name.trim());
+			}
+		}
+		LogOverrides.setKilled(killed.toArray(new String[killed.size()]));
+	}
+
+	public static String[] getKilledPackages() {
+		return LogOverrides.getKilled();
+	}
+
 	@Around(value = "isLoggedMethod(cfg)", argNames = "cfg")
 	public final Object around(ProceedingJoinPoint pjp, Logged cfg) throws Throwable {
-		long startMillis = System.currentTimeMillis();
+		if (killSwitch) {
+			return pjp.proceed();
+		}
 		Signature signature = pjp.getSignature();
-		final Logger logger = getLogger(signature);
+		final LogPlan plan = getPlan(signature, cfg);
+		if (plan.killed) {
+			return pjp.proceed();
+		}
+		final Logger logger = plan.logger;
+
+		//print() uses most verbose enabled level, so nothing is printed only when even ERROR is disabled
+		final boolean enabled = logger.isErrorEnabled();
+		if (!enabled && plan.stats == null) {
+			//disabled - no arguments, no messages, no clock
+			return pjp.proceed();
+		}
+
+		final Clock clock = plan.clock;
+		final long startNanos = clock.nanoTime();
+
+		//sampled out execution is still measured for statistics and exception logging
+		final boolean sampled = enabled && (plan.sampler == null || plan.sampler.sample(startNanos));
 
 		//parameter values and return values are logged only on debug/trace level or when forced
-		boolean logValues = logger.isDebugEnabled() || logger.isTraceEnabled() || cfg.forceValues();
+		boolean logValues = logger.isDebugEnabled() || plan.forceValues;
+
+		//volatile read once per execution, so enter and exit messages go the same way
+		final boolean async = enabled && AsyncLogging.enabled;
 
-		if (cfg.mode() == Logged.Mode.AROUND || cfg.mode() == Logged.Mode.ENTER) {
-			print(buildEnterMessage(pjp, cfg, logValues), logger);
+		if (sampled && plan.logEnter) {
+			if (async) {
+				AsyncLogging.enter(plan, pjp.getArgs(), logValues);
+			} else {
+				print(buildEnterMessage(plan, pjp.getArgs(), logValues), logger);
+			}
 		}
 
+		//nested @Logged callees with statistics are subtracted from self time of this execution
+		final CallStack stack = plan.stats != null ? CallStack.get() : null;
+		final int level = stack != null ? stack.push(plan.stats) : 0;
+
 		Object retVal = null;
+		//frame popped for asynchronous result must not be popped again when callback registration fails
+		long poppedChildNanos = -1;
 		try {
 			retVal = pjp.proceed();
-			if (cfg.mode() == Logged.Mode.AROUND || cfg.mode() == Logged.Mode.EXIT) {
-				long execMillis = System.currentTimeMillis() - startMillis;
-				String message = buildExitMessage(signature, cfg, logValues, execMillis, retVal);
-				print(message, logger);
-				if (cfg.statistics()) {
-					ExecStats stats = statsMap.get(signature);
-					if (stats == null) {
-						stats = new ExecStats();
-						statsMap.put(signature, stats);
+			if (plan.asyncResult && retVal != null) {
+				long execNanos = clock.nanoTime() - startNanos;
+				//caller waited only until return, so only that is subtracted from caller's self time
+				long childNanos = stack != null ? execNanos - stack.pop(level, execNanos) : 0;
+				poppedChildNanos = childNanos;
+				Object[] args = sampled && plan.logSlow ? pjp.getArgs() : null;
+				AsyncExit exit = new AsyncExit(plan, startNanos, childNanos, enabled, sampled, logValues, async, args);
+				if (!AsyncResults.whenComplete(retVal, exit)) {
+					exit.completed(retVal, null); //plain Future
+				}
+			} else if (plan.logExit || plan.logSlow || stack != null) {
+				long execNanos = clock.nanoTime() - startNanos;
+				if (sampled && plan.logExit) {
+					if (async) {
+						AsyncLogging.exit(plan, retVal, execNanos, logValues);
+					} else {
+						print(buildExitMessage(plan, logValues, execNanos, retVal), logger);
+					}
+				} else if (sampled && execNanos >= plan.slowNanos) {
+					//arguments are copied only now, when we know that execution was slow
+					if (async) {
+						AsyncLogging.slow(plan, pjp.getArgs(), retVal, execNanos, logValues);
+					} else {
+						print(buildSlowMessage(plan, pjp.getArgs(), logValues, execNanos, retVal), logger);
 					}
-					stats.execution(startMillis, execMillis);
 				}
-			}
-		} catch (Exception x) {
-			long execMillis = System.currentTimeMillis() - startMillis;
-			printException(signature, cfg, logger, execMillis, x);
-			if (cfg.statistics()) {
-				ExecStats stats = statsMap.get(signature);
-				if (stats == null) {
-					stats = new ExecStats();
-					statsMap.put(signature, stats);
+				if (stack != null) {
+					plan.stats.execution(System.currentTimeMillis(), execNanos, stack.pop(level, execNanos));
 				}
-				stats.exception(startMillis, execMillis);
+			}
+		} catch (Throwable x) {
+			//Errors are timed and counted too
+			long execNanos = clock.nanoTime() - startNanos;
+			if (async) {
+				AsyncLogging.error(plan, x, execNanos);
+			} else if (enabled) {
+				printException(plan, execNanos, x);
+			}
+			if (stack != null) {
+				long selfNanos = poppedChildNanos >= 0 ? execNanos - poppedChildNanos : stack.pop(level, execNanos);
+				plan.stats.exception(System.currentTimeMillis(), execNanos, selfNanos);
 			}
 			throw x;
 		}
 		return retVal;
 	}
 
-	private final Logger getLogger(final Signature signature) {
-		String className = signature.getDeclaringType().getName();
-		//String className = jp.getTarget().getClass().getName(); null target for static method
-		final int idxCglib = className.indexOf("$$EnhancerByCGLIB$$");
-		if (idxCglib != -1) {
-			className = className.substring(0, idxCglib);
+	/**
+	 * Exit (or exception) of @Logged method returning CompletionStage or ListenableFuture, logged and recorded into
+	 * statistics when result completes. Execution time is from method entry to completion.
+	 */
+	private static final class AsyncExit extends AsyncResults.Completion {
+
+		private final LogPlan plan;
+
+		private final long startNanos;
+
+		/**
+		 * nested callees executed before return
+		 */
+		private final long childNanos;
+
+		private final boolean enabled;
+
+		private final boolean sampled;
+
+		private final boolean logValues;
+
+		private final boolean async;
+
+		/**
+		 * Mode.SLOW only
+		 */
+		private final Object[] args;
+
+		AsyncExit(LogPlan plan, long startNanos, long childNanos, boolean enabled, boolean sampled, boolean logValues,
+				boolean async, Object[] args) {
+			this.plan = plan;
+			this.startNanos = startNanos;
+			this.childNanos = childNanos;
+			this.enabled = enabled;
+			this.sampled = sampled;
+			this.logValues = logValues;
+			this.async = async;
+			this.args = args;
+		}
+
+		@Override
+		void completed(Object value, Throwable failure) {
+			long execNanos = plan.clock.nanoTime() - startNanos;
+			if (failure == null) {
+				if (sampled && plan.logExit) {
+					if (async) {
+						AsyncLogging.exit(plan, value, execNanos, logValues);
+					} else {
+						print(buildExitMessage(plan, logValues, execNanos, value), plan.logger);
+					}
+				} else if (sampled && plan.logSlow && execNanos >= plan.slowNanos) {
+					if (async) {
+						AsyncLogging.slow(plan, args, value, execNanos, logValues);
+					} else {
+						print(buildSlowMessage(plan, args, logValues, execNanos, value), plan.logger);
+					}
+				}
+				if (plan.stats != null) {
+					plan.stats.execution(System.currentTimeMillis(), execNanos, execNanos - childNanos);
+				}
+			} else {
+				if (async) {
+					AsyncLogging.error(plan, failure, execNanos);
+				} else if (enabled) {
+					printException(plan, execNanos, failure);
+				}
+				if (plan.stats != null) {
+					plan.stats.exception(System.currentTimeMillis(), execNanos, execNanos - childNanos);
+				}
+			}
 		}
-		//We will not cache Loggers. Logback already does that
-		return LoggerFactory.getLogger(className);
 	}
 
-	private final void print(final String message, final Logger logger) {
+	/**
+	 * Lock-free lookup of precompiled LogPlan. Racing threads may build plan for the same join point twice, but only one is stored
+	 * Plans built with different than current {@link LogOverrides} or with evicted statistics are dropped and rebuilt.
+	 */
+	private final LogPlan getPlan(final Signature signature, final Logged cfg) {
+		final LogOverrides overrides = LogOverrides.current;
+		final LogPlan.Table table = getTable(signature.getDeclaringType());
+		LogPlan head = table.get(signature);
+		while (true) {
+			LogPlan valid = head != null && head.overrides == overrides ? head : null;
+			for (LogPlan plan = valid; plan != null; plan = plan.next) {
+				if (plan.config == cfg) {
+					if (!plan.isStatsStale()) {
+						return plan;
+					}
+					valid = null; //drop whole chain, so it does not keep evicted ExecStats
+					break;
+				}
+			}
+			//Signature (or Logged) first contact, overrides changed or statistics evicted
+			LogPlan plan = new LogPlan(signature, cfg, valid, overrides);
+			if (table.replace(signature, head, plan)) {
+				return plan;
+			} else {
+				head = table.get(signature);
+			}
+		}
+	}
+
+	private final LogPlan.Table getTable(final Class<?> declaringType) {
+		LogPlan.Table table = plans.get(declaringType);
+		if (table == null) {
+			table = new LogPlan.Table();
+			LogPlan.Table existing = plans.putIfAbsent(declaringType, table);
+			if (existing != null) {
+				table = existing;
+			}
+		}
+		return table;
+	}
+
+	static void print(final String message, final Logger logger) {
 		if (logger.isTraceEnabled()) {
 			logger.trace(message);
 		} else if (logger.isDebugEnabled()) {
@@ -157,51 +359,79 @@ public class LogAspect {
 			logger.warn(message);
 		} else if (logger.isErrorEnabled()) {
 			logger.error(message);
-		} else {
-			logger.warn("Unknown log level");
-			logger.warn(message);
 		}
 	}
 
-	private final String buildEnterMessage(final JoinPoint jp, final Logged log, boolean logValues) {
-		final StringBuilder sb = new StringBuilder();
-		sb.append(ENTER);
-		sb.append(jp.getSignature().getName());
-		sb.append('(');
+	static String buildEnterMessage(final LogPlan plan, final Object[] args, boolean logValues) {
+		if (plan.format != Logged.Format.TEXT) {
+			return StructuredMessage.enter(plan, args, logValues);
+		}
+		final StringBuilder sb = MessageBuffer.acquire();
+		try {
+			sb.append(ENTER);
+			sb.append(plan.name);
+			buildArgs(plan, args, logValues, sb);
+			sb.append(ENTER);
+			return sb.toString();
+		} finally {
+			MessageBuffer.release(sb);
+		}
+	}
 
-		final Object[] args = jp.getArgs();
+	static String buildExitMessage(final LogPlan plan, boolean logValue, final long execNanos,
+			final Object retVal) {
+		if (plan.format != Logged.Format.TEXT) {
+			return StructuredMessage.exit(plan, logValue, execNanos, retVal);
+		}
+		final StringBuilder sb = MessageBuffer.acquire();
+		try {
+			sb.append(EXIT);
+			sb.append(plan.name);
+			buildRetVal(plan, logValue, retVal, sb);
+			sb.append(EXIT);
 
+			if (plan.logTime) {
+				buildTime(plan, execNanos, sb);
+			}
+			return sb.toString();
+		} finally {
+			MessageBuffer.release(sb);
+		}
+	}
+
+	/**
+	 * Single line for Mode.SLOW with arguments, return value and execution time
+	 */
+	static String buildSlowMessage(final LogPlan plan, final Object[] args, boolean logValues, final long execNanos,
+			final Object retVal) {
+		if (plan.format != Logged.Format.TEXT) {
+			return StructuredMessage.slow(plan, args, logValues, execNanos, retVal);
+		}
+		final StringBuilder sb = MessageBuffer.acquire();
+		try {
+			sb.append(SLOW);
+			sb.append(plan.name);
+			buildArgs(plan, args, logValues, sb);
+			buildRetVal(plan, logValues, retVal, sb);
+			sb.append(SLOW);
+			buildTime(plan, execNanos, sb);
+			return sb.toString();
+		} finally {
+			MessageBuffer.release(sb);
+		}
+	}
+
+	private static void buildArgs(final LogPlan plan, final Object[] args, boolean logValues, final StringBuilder sb) {
+		sb.append('(');
 		for (int i = 0; i < args.length; ++i) {
 			final Object arg = args[i];
 
 			if (arg == null) {
 				sb.append(NULL); //log null regardless other setting
+			} else if (logValues && plan.isParamValue(i, arg)) {
+				buildValue(arg, sb, plan.maxLength, plan.preview);
 			} else {
-
-				boolean logVal = logValues;
-				if (logValues) {
-					final Class<?>[] exclTypes = log.notTypes();
-					for (int j = 0; j < exclTypes.length; ++j) {
-						if (exclTypes[j].isAssignableFrom(arg.getClass())) {
-							logVal = false;
-							break;
-						}
-					}
-
-					final int[] exclParams = log.notParIdxs();
-					for (int j = 0; j < exclParams.length; ++j) {
-						if (i == exclParams[j]) {
-							logVal = false;
-							break;
-						}
-					}
-				}
-
-				if (logVal) {
-					buildValue(arg, sb, log.maxLength());
-				} else {
-					sb.append(arg.getClass().getSimpleName());
-				}
+				sb.append(ValueRenderers.type(arg.getClass()).simpleName);
 			}
 			sb.append(',');
 		}
@@ -210,187 +440,128 @@ public class LogAspect {
 			sb.deleteCharAt(sb.length() - 1);
 		}
 		sb.append(')');
-		sb.append(ENTER);
-		return sb.toString();
 	}
 
-	private final String buildExitMessage(final Signature signature, final Logged log, boolean logValue,
-			final long execMillis, final Object retVal) {
-		final StringBuilder sb = new StringBuilder();
-		sb.append(EXIT);
-		sb.append(signature.getName());
-
-		boolean notVoid = (signature instanceof MethodSignature)
-				&& ((MethodSignature) signature).getReturnType() != void.class;
-
-		if (retVal == null && notVoid) {
+	private static void buildRetVal(final LogPlan plan, boolean logValue, final Object retVal, final StringBuilder sb) {
+		if (retVal == null && !plan.isVoid) {
 			sb.append(": ");
 			sb.append(NULL); //log null regardless other setting
-		} else {
-
-			if (log.logRetVal() && notVoid) {
-				sb.append(": ");
-
-				if (logValue) {
-					final Class<?>[] exclTypes = log.notTypes();
-					for (int j = 0; j < exclTypes.length; ++j) {
-						if (exclTypes[j].isAssignableFrom(retVal.getClass())) {
-							logValue = false;
-							break;
-						}
-					}
-					final int[] exclParams = log.notParIdxs();
-					for (int j = 0; j < exclParams.length; ++j) {
-						if (exclParams[j] == -1) { // index -1 means return value
-							logValue = false;
-							break;
-						}
-					}
-				}
-
-				if (logValue) {
-					buildValue(retVal, sb, log.maxLength());
-				} else {
-					sb.append(retVal.getClass().getSimpleName());
-				}
+		} else if (plan.logRetVal) {
+			sb.append(": ");
+			if (logValue && plan.isRetValValue(retVal)) {
+				buildValue(retVal, sb, plan.maxLength, plan.preview);
+			} else {
+				sb.append(ValueRenderers.type(retVal.getClass()).simpleName);
 			}
 		}
-		sb.append(EXIT);
-
-		if (log.logTime()) {
-			sb.append(' ');
-			sb.append(execMillis);
-			sb.append("ms");
-		}
-		/*
-		if (log.statistics()) {
-			signature.toLongString();
-			//System.out.println(signature.toLongString());
-			//pjp.getSignature().;
-			//execMillis
-		}
-		 */
-		return sb.toString();
 	}
 
-	private final void printException(final Signature signature, final Logged cfg, final Logger logger,
-			final long execMillis, final Exception x) {
-
-		final StringBuilder sb = new StringBuilder();
-		sb.append(ERROR);
-		sb.append(signature.getName());
+	private static void buildTime(final LogPlan plan, final long execNanos, final StringBuilder sb) {
 		sb.append(' ');
-		sb.append(String.valueOf(x));
-		sb.append(ERROR);
+		sb.append(plan.toTimeUnit(execNanos));
+		sb.append(plan.timeUnitSuffix);
+	}
 
-		if (cfg.logTime()) {
-			sb.append(' ');
-			sb.append(execMillis);
-			sb.append("ms");
+	static void printException(final LogPlan plan, final long execNanos, final Throwable x) {
+		if (!ExceptionFingerprints.first(plan, x)) {
+			return; //repeated in current window - summarized later
 		}
+		final String message = plan.format != Logged.Format.TEXT ? StructuredMessage.error(plan, execNanos, x)
+				: buildExceptionMessage(plan, execNanos, x);
 
 		//ignore configured logger Level a use ERROR level
-		if (cfg.stackTrace()) {
-			logger.error(sb.toString(), x);
+		if (plan.stackTrace) {
+			plan.logger.error(message, x);
 		} else {
-			logger.error(sb.toString());
+			plan.logger.error(message);
 		}
 
 	}
 
-	private final void buildValue(Object value, StringBuilder sb, int max) {
-		if (value == null) {
-			sb.append(NULL);
+	/**
+	 * Summary of exceptions not logged by {@link #printException(LogPlan, long, Throwable)} in last window
+	 */
+	static void printRepeated(final String className, final String method, final Logged.Format format,
+			final String exception, final long count) {
+		final String message;
+		if (format != Logged.Format.TEXT) {
+			message = StructuredMessage.repeated(className, method, format, exception, count);
 		} else {
-			if (isHibernatePresent) {
-				value = HibernateHelper.getHibernateProxiedValue(value);
-			}
-			if (value instanceof Collection<?>) {
-				int size = ((Collection<?>) value).size();
-				sb.append(value.getClass().getSimpleName());
-				sb.append("[").append(size).append("]");
-			} else if (value instanceof Map<?, ?>) {
-				int size = ((Map<?, ?>) value).size();
-				sb.append(value.getClass().getSimpleName());
-				sb.append("[").append(size).append("]");
-			} else if (value.getClass().isArray()) {
-				int size = Array.getLength(value);
-				String simpleName = value.getClass().getSimpleName();
-				sb.append(simpleName.substring(0, simpleName.length() - 2));
-				sb.append("[").append(size).append("]");
-			} else {
-				String string = String.valueOf(value);
-				if (string.length() > max) {
-					sb.append(string.substring(0, max));
-					sb.append(CONTINUE);
-					sb.append(string.length());
-				} else {
-					sb.append(string);
-				}
+			final StringBuilder sb = MessageBuffer.acquire();
+			try {
+				sb.append(ERROR);
+				sb.append(method);
+				sb.append(' ');
+				sb.append(exception);
+				sb.append(" repeated ");
+				sb.append(count);
+				sb.append(count == 1 ? " more time" : " more times");
+				sb.append(ERROR);
+				message = sb.toString();
+			} finally {
+				MessageBuffer.release(sb);
 			}
 		}
+		LoggerFactory.getLogger(className).error(message);
 	}
 
-	public static class ExecStats implements Serializable {
-
-		private static final long serialVersionUID = 1L;
-
-		private Date lastExecutionDate;
-
-		private long lastExecutionTime;
-
-		private Date lastExceptionDate;
-
-		private long lastExceptionTime;
-
-		private long average = 0;
-
-		private int exceptions = 0;
-
-		private long executions = 0;
-
-		private void execution(long startMillis, long execMillis) {
-			++executions;
-			lastExecutionDate = new Date(startMillis);
-			lastExecutionTime = execMillis;
-			//average = (average * (executions - 1) + execMillis) / executions;
-			average = average + ((execMillis - average) / executions);
-		}
-
-		private void exception(long startMillis, long execMillis) {
-			execution(exceptions, average);
-			++exceptions;
-			lastExceptionDate = new Date(startMillis);
-			lastExceptionTime = execMillis;
-		}
-
-		public Date getLastExecutionDate() {
-			return lastExecutionDate;
-		}
-
-		public long getLastExecutionTime() {
-			return lastExecutionTime;
-		}
-
-		public Date getLastExceptionDate() {
-			return lastExceptionDate;
-		}
-
-		public long getLastExceptionTime() {
-			return lastExceptionTime;
-		}
+	private static String buildExceptionMessage(final LogPlan plan, final long execNanos, final Throwable x) {
+		final StringBuilder sb = MessageBuffer.acquire();
+		try {
+			sb.append(ERROR);
+			sb.append(plan.name);
+			sb.append(' ');
+			sb.append(String.valueOf(x));
+			sb.append(ERROR);
 
-		public long getAverage() {
-			return average;
+			if (plan.logTime) {
+				buildTime(plan, execNanos, sb);
+			}
+			return sb.toString();
+		} finally {
+			MessageBuffer.release(sb);
 		}
+	}
 
-		public int getExceptions() {
-			return exceptions;
+	/**
+	 * @param preview number of Collection, Map or array elements to render
+	 */
+	static void buildValue(Object value, StringBuilder sb, int max, int preview) {
+		if (value == null) {
+			sb.append(NULL);
+		} else if (value instanceof LogEvent.Rendered) {
+			sb.append(((LogEvent.Rendered) value).text); //asynchronous message value rendered by calling thread
+		} else {
+			final Class<?> clazz = value.getClass();
+			if (clazz == String.class) {
+				buildString((String) value, sb, max);
+			} else if (max >= MAX_LONG_LENGTH && isIntegral(clazz)) {
+				sb.append(((Number) value).longValue()); //digits straight into buffer, no Integer.toString()
+			} else {
+				ValueRenderers.ValueType type = ValueRenderers.type(clazz);
+				if (type.hibernate != HibernateHelper.Kind.PLAIN) {
+					Object unwrapped = HibernateHelper.getHibernateProxiedValue(value, type.hibernate);
+					if (unwrapped != value) {
+						buildString((String) unwrapped, sb, max); //uninitialized
+						return;
+					}
+				}
+				type.renderer.render(type, value, sb, max, preview);
+			}
 		}
+	}
 
-		public long getExecutions() {
-			return executions;
+	static void buildString(final CharSequence string, final StringBuilder sb, final int max) {
+		if (string.length() > max) {
+			sb.append(string, 0, max); //no substring() copy
+			sb.append(CONTINUE);
+			sb.append(string.length());
+		} else {
+			sb.append(string);
 		}
+	}
 
+	private static boolean isIntegral(final Class<?> clazz) {
+		return clazz == Integer.class || clazz == Long.class || clazz == Short.class || clazz == Byte.class;
 	}
 }
@@ -0,0 +1,199 @@
+package net.anthavio.aspect;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Slot of {@link LogEventRing}. Holds what calling thread captured for asynchronous {@link LogAspect} message.
+ *
+ * Slots are preallocated and reused, so capturing does not allocate. Fields are written by single producer
+ * and published to consumer by {@link #sequence} volatile write.
+ *
+ * Values of immutable types (String, boxed primitives, enums,...) are captured by reference and rendered on consumer thread.
+ * Other values are rendered into {@link Rendered} text on calling thread because they can change before consumer gets to them.
+ * That happens before slot is claimed, because claimed slot must always be published.
+ *
+ * @author vanek
+ *
+ */
+final class LogEvent {
+
+	static final byte ENTER = 1;
+
+	static final byte EXIT = 2;
+
+	static final byte ERROR = 3;
+
+	static final byte SLOW = 4;
+
+	/**
+	 * Vyukov's cell sequence - position for producer when free, position + 1 for consumer when published
+	 */
+	volatile long sequence;
+
+	byte type;
+
+	LogPlan plan;
+
+	Thread thread;
+
+	long timestamp;
+
+	boolean logValues;
+
+	Object[] args;
+
+	Object retVal;
+
+	Throwable exception;
+
+	long execNanos;
+
+	LogEvent(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @param args already captured by {@link #captureArgs(LogPlan, Object[], boolean)}
+	 */
+	void enter(LogPlan plan, Object[] args, boolean logValues) {
+		init(ENTER, plan, logValues);
+		this.args = args;
+	}
+
+	/**
+	 * @param retVal already captured by {@link #captureRetVal(LogPlan, Object, boolean)}
+	 */
+	void exit(LogPlan plan, Object retVal, long execNanos, boolean logValue) {
+		init(EXIT, plan, logValue);
+		this.retVal = retVal;
+		this.execNanos = execNanos;
+	}
+
+	void slow(LogPlan plan, Object[] args, Object retVal, long execNanos, boolean logValues) {
+		init(SLOW, plan, logValues);
+		this.args = args;
+		this.retVal = retVal;
+		this.execNanos = execNanos;
+	}
+
+	void error(LogPlan plan, Throwable exception, long execNanos) {
+		init(ERROR, plan, false);
+		this.exception = exception;
+		this.execNanos = execNanos;
+	}
+
+	/**
+	 * Renders mutable argument values. Called before slot is claimed, so failing toString() propagates to caller
+	 * (as with synchronous logging) and never leaves claimed slot unpublished.
+	 *
+	 * @return args or their copy with rendered values, so args stay usable for synchronous fallback
+	 */
+	static Object[] captureArgs(LogPlan plan, Object[] args, boolean logValues) {
+		Object[] captured = args;
+		if (logValues) {
+			for (int i = 0; i < args.length; ++i) {
+				Object arg = args[i];
+				if (arg != null && plan.isParamValue(i, arg)) {
+					Object value = capture(arg, plan);
+					if (value != arg) {
+						if (captured == args) {
+							captured = args.clone();
+						}
+						captured[i] = value;
+					}
+				}
+			}
+		}
+		return captured;
+	}
+
+	/**
+	 * Renders mutable return value. Called before slot is claimed, see {@link #captureArgs(LogPlan, Object[], boolean)}
+	 */
+	static Object captureRetVal(LogPlan plan, Object retVal, boolean logValues) {
+		if (logValues && retVal != null && plan.isRetValValue(retVal)) {
+			return capture(retVal, plan);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Formats and logs captured message. Called by consumer thread
+	 */
+	void dispatch() {
+		switch (type) {
+		case ENTER:
+			LogAspect.print(LogAspect.buildEnterMessage(plan, args, logValues), plan.logger);
+			break;
+		case EXIT:
+			LogAspect.print(LogAspect.buildExitMessage(plan, logValues, execNanos, retVal), plan.logger);
+			break;
+		case SLOW:
+			LogAspect.print(LogAspect.buildSlowMessage(plan, args, logValues, execNanos, retVal), plan.logger);
+			break;
+		case ERROR:
+			LogAspect.printException(plan, execNanos, exception);
+			break;
+		default:
+			throw new IllegalStateException("Unknown event type " + type);
+		}
+	}
+
+	/**
+	 * Drop references so slot does not keep garbage reachable
+	 */
+	void clear() {
+		plan = null;
+		thread = null;
+		args = null;
+		retVal = null;
+		exception = null;
+	}
+
+	private void init(byte type, LogPlan plan, boolean logValues) {
+		this.type = type;
+		this.plan = plan;
+		this.logValues = logValues;
+		this.thread = Thread.currentThread();
+		this.timestamp = System.currentTimeMillis();
+	}
+
+	private static Object capture(Object value, LogPlan plan) {
+		if (isImmutable(value)) {
+			return value;
+		} else {
+			StringBuilder sb = MessageBuffer.acquire();
+			try {
+				LogAspect.buildValue(value, sb, plan.maxLength, plan.preview);
+				return new Rendered(sb.toString());
+			} finally {
+				MessageBuffer.release(sb);
+			}
+		}
+	}
+
+	private static boolean isImmutable(Object value) {
+		Class<?> clazz = value.getClass();
+		return clazz == String.class || clazz == Integer.class || clazz == Long.class || clazz == Boolean.class
+				|| clazz == Double.class || clazz == Float.class || clazz == Short.class || clazz == Byte.class
+				|| clazz == Character.class || clazz == BigDecimal.class || clazz == BigInteger.class || value instanceof Enum;
+	}
+
+	/**
+	 * Value already rendered on calling thread. {@link LogAspect#buildValue(Object, StringBuilder, int, int)} appends it as is
+	 */
+	static final class Rendered {
+
+		final String text;
+
+		Rendered(String text) {
+			this.text = text;
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package net.anthavio.aspect;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free multi-producer single-consumer ring of preallocated {@link LogEvent}s.
+ *
+ * Dmitry Vyukov's bounded MPMC queue algorithm: every slot carries sequence number telling producers and consumer
+ * whose turn it is, producers claim slots by CAS on enqueue position. Only one consumer thread is expected,
+ * so dequeue position is plain volatile.
+ *
+ * Producer: {@link #claim()}, fill the slot, {@link #publish(LogEvent)}
+ * Consumer: {@link #peek()}, read the slot, {@link #release(LogEvent)}
+ *
+ * @author vanek
+ *
+ */
+final class LogEventRing {
+
+	private final LogEvent[] events;
+
+	private final int mask;
+
+	private final AtomicLong enqueuePosition = new AtomicLong();
+
+	private volatile long dequeuePosition;
+
+	/**
+	 * @param capacity rounded up to power of two
+	 */
+	LogEventRing(int capacity) {
+		int size = 2;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.events = new LogEvent[size];
+		this.mask = size - 1;
+		for (int i = 0; i < size; ++i) {
+			events[i] = new LogEvent(i);
+		}
+	}
+
+	int capacity() {
+		return events.length;
+	}
+
+	/**
+	 * @return free slot now owned by calling thread or null when ring is full
+	 */
+	LogEvent claim() {
+		long position = enqueuePosition.get();
+		while (true) {
+			LogEvent event = events[(int) position & mask];
+			long difference = event.sequence - position;
+			if (difference == 0) {
+				if (enqueuePosition.compareAndSet(position, position + 1)) {
+					return event;
+				}
+				position = enqueuePosition.get();
+			} else if (difference < 0) {
+				return null; //full - slot still holds event from previous lap
+			} else {
+				position = enqueuePosition.get(); //other producer was faster
+			}
+		}
+	}
+
+	/**
+	 * Makes claimed slot visible to consumer
+	 */
+	void publish(LogEvent event) {
+		event.sequence = event.sequence + 1;
+	}
+
+	/**
+	 * @return next published event or null when there is none. Event stays in ring until {@link #release(LogEvent)}
+	 */
+	LogEvent peek() {
+		long position = dequeuePosition;
+		LogEvent event = events[(int) position & mask];
+		return event.sequence == position + 1 ? event : null;
+	}
+
+	/**
+	 * Returns consumed event back to producers
+	 */
+	void release(LogEvent event) {
+		event.clear();
+		long position = dequeuePosition;
+		event.sequence = position + events.length;
+		dequeuePosition = position + 1;
+	}
+
+	/**
+	 * @return number of claimed slots. Includes slots being filled by producers right now
+	 */
+	long enqueued() {
+		return enqueuePosition.get();
+	}
+
+	/**
+	 * @return number of consumed events
+	 */
+	long dequeued() {
+		return dequeuePosition;
+	}
+}
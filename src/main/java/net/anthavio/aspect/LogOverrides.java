@@ -0,0 +1,405 @@
+package net.anthavio.aspect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runtime overrides of {@link Logged} attributes, so value logging or statistics of hot method can be changed without redeploy.
+ *
+ * Overrides are properties where key is target and value is comma separated list of attributes
+ * <pre>
+ * com.example.OrderService.placeOrder = forceValues=false, statistics=false
+ * com.example.OrderService = mode=SLOW, slowThreshold=100
+ * com.example.* = maxLength=100
+ * </pre>
+ * Target is method (all overloads), class or package with all subpackages (.*). When more targets match, attributes
+ * of more specific one win. Supported attributes are mode, format, notParIdxs (space separated), maxLength, preview,
+ * logRetVal, logTime, timeUnit, slowThreshold, sampleEvery, maxPerSecond, forceValues, forceTypes, statistics, stackTrace.
+ *
+ * Whole file is parsed into immutable LogOverrides and published by single volatile write. {@link LogAspect} compares it
+ * with the one its cached plan was built with and rebuilds plan when it differs. Invalid attributes are logged and ignored.
+ *
+ * Packages (or classes) killed by {@link LogAspect#setKilledPackages(String...)} are part of LogOverrides too, so plans
+ * of killed join points are rebuilt in the same way.
+ *
+ * File is checked for modification periodically (java.nio.file.WatchService requires Java 7). Start it using
+ * {@link #watch(File, long, TimeUnit)} or system properties
+ * java -DLogAspect.overrides=/etc/myapp/logaspect.properties -DLogAspect.overrides.interval=5 com.something.MainClass
+ *
+ * @author vanek
+ *
+ */
+public final class LogOverrides {
+
+	private static final Logger log = LoggerFactory.getLogger(LogOverrides.class);
+
+	private static final String WILDCARD = ".*";
+
+	private static final Map<String, Map<String, String>> NO_TARGETS = Collections.emptyMap();
+
+	static final LogOverrides EMPTY = new LogOverrides(NO_TARGETS, new String[0]);
+
+	/**
+	 * Read by every execution of @Logged method
+	 */
+	static volatile LogOverrides current = EMPTY;
+
+	private static ScheduledFuture<?> watching;
+
+	static {
+		String path = System.getProperty("LogAspect.overrides");
+		if (path != null) {
+			try {
+				watch(new File(path), Long.parseLong(System.getProperty("LogAspect.overrides.interval", "5")),
+						TimeUnit.SECONDS);
+			} catch (IllegalArgumentException iax) {
+				log.warn("Invalid LogAspect.overrides configuration", iax);
+			}
+		}
+	}
+
+	/**
+	 * target -> attribute -> value
+	 */
+	private final Map<String, Map<String, String>> targets;
+
+	/**
+	 * Killed packages and classes
+	 */
+	private final String[] killed;
+
+	private LogOverrides(Map<String, Map<String, String>> targets, String[] killed) {
+		this.targets = targets;
+		this.killed = killed;
+	}
+
+	/**
+	 * Replaces current overrides. Already cached plans are rebuilt on next execution
+	 */
+	public static void set(Properties properties) {
+		Map<String, Map<String, String>> targets = new HashMap<String, Map<String, String>>();
+		for (String target : properties.stringPropertyNames()) {
+			Map<String, String> attributes = new HashMap<String, String>();
+			for (String attribute : properties.getProperty(target).split(",")) {
+				int idx = attribute.indexOf('=');
+				if (idx == -1) {
+					log.warn("Invalid override " + target + " " + attribute);
+				} else {
+					attributes.put(attribute.substring(0, idx).trim(), attribute.substring(idx + 1).trim());
+				}
+			}
+			targets.put(target.trim(), attributes);
+		}
+		setTargets(targets);
+		log.info("Overrides set for " + targets.keySet());
+	}
+
+	/**
+	 * Removes all overrides and stops watching
+	 */
+	public static synchronized void clear() {
+		if (watching != null) {
+			watching.cancel(false);
+			watching = null;
+		}
+		setTargets(NO_TARGETS);
+	}
+
+	/**
+	 * Loads overrides from properties file
+	 */
+	public static void load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream stream = new FileInputStream(file);
+		try {
+			properties.load(stream);
+		} finally {
+			stream.close();
+		}
+		set(properties);
+	}
+
+	/**
+	 * Loads overrides from file now and then every time file is modified. Missing file means no overrides
+	 */
+	public static synchronized void watch(final File file, long interval, TimeUnit unit) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("Interval must be positive " + interval);
+		}
+		if (watching != null) {
+			watching.cancel(false); //keep current targets until file is checked again
+		}
+		Runnable check = new Runnable() {
+
+			private long lastModified = -1;
+
+			@Override
+			public void run() {
+				long modified = file.lastModified(); //0 for missing file
+				if (modified != lastModified) {
+					lastModified = modified;
+					try {
+						if (modified == 0) {
+							setTargets(NO_TARGETS);
+						} else {
+							load(file);
+						}
+					} catch (IOException iox) {
+						log.warn("Failed to load overrides from " + file, iox);
+					} catch (RuntimeException rx) {
+						log.warn("Failed to load overrides from " + file, rx);
+					}
+				}
+			}
+		};
+		check.run();
+		watching = Background.executor().scheduleWithFixedDelay(check, interval, interval, unit);
+	}
+
+	private static synchronized void setTargets(Map<String, Map<String, String>> targets) {
+		current = new LogOverrides(targets, current.killed);
+	}
+
+	static synchronized void setKilled(String[] killed) {
+		current = new LogOverrides(current.targets, killed.clone());
+	}
+
+	static String[] getKilled() {
+		return current.killed.clone();
+	}
+
+	/**
+	 * @return true when class is killed or it is in killed package (or subpackage)
+	 */
+	boolean isKilled(String className) {
+		for (String name : killed) {
+			if (className.startsWith(name)
+					&& (className.length() == name.length() || className.charAt(name.length()) == '.' || className
+							.charAt(name.length()) == '$')) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return config with attributes overridden or config itself when there is nothing to override
+	 */
+	Logged apply(String className, String methodName, Logged config) {
+		if (targets.isEmpty()) {
+			return config;
+		}
+		//least specific first, so more specific ones overwrite them
+		List<String> matching = new ArrayList<String>();
+		for (String target : targets.keySet()) {
+			if (target.endsWith(WILDCARD) && className.startsWith(target.substring(0, target.length() - 1))) {
+				matching.add(target);
+			}
+		}
+		Collections.sort(matching); //shorter (parent) packages first
+		if (targets.containsKey(className)) {
+			matching.add(className);
+		}
+		String method = className + "." + methodName;
+		if (targets.containsKey(method)) {
+			matching.add(method);
+		}
+		if (matching.isEmpty()) {
+			return config;
+		}
+		Map<String, String> attributes = new HashMap<String, String>();
+		for (String target : matching) {
+			attributes.putAll(targets.get(target));
+		}
+		return new Overridden(config, attributes, method);
+	}
+
+	/**
+	 * Logged with attributes from overrides. Attribute values are parsed when LogPlan is built
+	 */
+	private static class Overridden implements Logged {
+
+		private final Logged config;
+
+		private final Map<String, String> attributes;
+
+		private final String target;
+
+		Overridden(Logged config, Map<String, String> attributes, String target) {
+			this.config = config;
+			this.attributes = attributes;
+			this.target = target;
+		}
+
+		@Override
+		public Class<? extends Annotation> annotationType() {
+			return Logged.class;
+		}
+
+		@Override
+		public Mode mode() {
+			String value = attributes.get("mode");
+			return value != null ? parse(Mode.class, "mode", value, config.mode()) : config.mode();
+		}
+
+		@Override
+		public Format format() {
+			String value = attributes.get("format");
+			return value != null ? parse(Format.class, "format", value, config.format()) : config.format();
+		}
+
+		@Override
+		public Class<?>[] notTypes() {
+			return config.notTypes();
+		}
+
+		@Override
+		public int[] notParIdxs() {
+			String value = attributes.get("notParIdxs");
+			if (value == null) {
+				return config.notParIdxs();
+			}
+			String[] split = value.trim().split("\\s+");
+			int[] idxs = new int[value.trim().length() == 0 ? 0 : split.length];
+			try {
+				for (int i = 0; i < idxs.length; ++i) {
+					idxs[i] = Integer.parseInt(split[i]);
+				}
+				return idxs;
+			} catch (NumberFormatException nfx) {
+				invalid("notParIdxs", value);
+				return config.notParIdxs();
+			}
+		}
+
+		@Override
+		public int maxLength() {
+			return parse("maxLength", config.maxLength());
+		}
+
+		@Override
+		public int preview() {
+			return parse("preview", config.preview());
+		}
+
+		@Override
+		public boolean logRetVal() {
+			return parse("logRetVal", config.logRetVal());
+		}
+
+		@Override
+		public boolean logTime() {
+			return parse("logTime", config.logTime());
+		}
+
+		@Override
+		public TimeUnit timeUnit() {
+			String value = attributes.get("timeUnit");
+			return value != null ? parse(TimeUnit.class, "timeUnit", value, config.timeUnit()) : config.timeUnit();
+		}
+
+		@Override
+		public long slowThreshold() {
+			return parse("slowThreshold", config.slowThreshold());
+		}
+
+		@Override
+		public Class<? extends Clock> clock() {
+			return config.clock();
+		}
+
+		@Override
+		public int sampleEvery() {
+			return parse("sampleEvery", config.sampleEvery());
+		}
+
+		@Override
+		public int maxPerSecond() {
+			return parse("maxPerSecond", config.maxPerSecond());
+		}
+
+		@Override
+		public boolean forceValues() {
+			return parse("forceValues", config.forceValues());
+		}
+
+		@Override
+		public boolean forceTypes() {
+			return parse("forceTypes", config.forceTypes());
+		}
+
+		@Override
+		public boolean statistics() {
+			return parse("statistics", config.statistics());
+		}
+
+		@Override
+		public boolean stackTrace() {
+			return parse("stackTrace", config.stackTrace());
+		}
+
+		private long parse(String name, long original) {
+			String value = attributes.get(name);
+			if (value == null) {
+				return original;
+			}
+			try {
+				return Long.parseLong(value);
+			} catch (NumberFormatException nfx) {
+				invalid(name, value);
+				return original;
+			}
+		}
+
+		private int parse(String name, int original) {
+			long value = parse(name, (long) original);
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				invalid(name, attributes.get(name));
+				return original;
+			}
+			return (int) value;
+		}
+
+		private boolean parse(String name, boolean original) {
+			String value = attributes.get(name);
+			if (value == null) {
+				return original;
+			} else if (value.equalsIgnoreCase("true")) {
+				return true;
+			} else if (value.equalsIgnoreCase("false")) {
+				return false;
+			} else {
+				invalid(name, value);
+				return original;
+			}
+		}
+
+		private <E extends Enum<E>> E parse(Class<E> type, String name, String value, E original) {
+			try {
+				return Enum.valueOf(type, value.toUpperCase(Locale.ENGLISH));
+			} catch (IllegalArgumentException iax) {
+				invalid(name, value);
+				return original;
+			}
+		}
+
+		private void invalid(String name, String value) {
+			log.warn("Invalid override " + target + " " + name + "=" + value);
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package net.anthavio.aspect;
+
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.CodeSignature;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Everything {@link LogAspect} needs to know about advised join point, resolved once from {@link Logged} annotation and {@link Signature}
+ *
+ * Plans are immutable and can be shared between threads without synchronization.
+ * Plans for the same Signature but different {@link Logged} instance (@Logged class with @Logged subclass) are chained via {@link #next}
+ * Attributes are taken from {@link LogOverrides} when there are some for the join point. Plan built with different
+ * LogOverrides than current ones is stale and it is rebuilt.
+ *
+ * @author vanek
+ *
+ */
+final class LogPlan {
+
+	private static final int RETURN_VALUE_IDX = -1;
+
+	private static final Logged.Format DEFAULT_FORMAT = parseFormat(System.getProperty("LogAspect.format"));
+
+	/**
+	 * Original annotation - plan key
+	 */
+	final Logged config;
+
+	final LogOverrides overrides;
+
+	/**
+	 * Killed by package kill switch - advice only proceeds
+	 */
+	final boolean killed;
+
+	final LogPlan next;
+
+	final Logger logger;
+
+	final String name;
+
+	final String className;
+
+	/**
+	 * never DEFAULT
+	 */
+	final Logged.Format format;
+
+	final boolean logEnter;
+
+	final boolean logExit;
+
+	final boolean logSlow;
+
+	/**
+	 * Mode.SLOW threshold
+	 */
+	final long slowNanos;
+
+	final boolean isVoid;
+
+	/**
+	 * return type might be CompletionStage or ListenableFuture - execution ends when it completes
+	 */
+	final boolean asyncResult;
+
+	/**
+	 * return value (or it's type) is logged
+	 */
+	final boolean logRetVal;
+
+	/**
+	 * return value is never logged as value (notParIdxs contains -1 or return type is one of notTypes)
+	 */
+	final boolean retValExcluded;
+
+	/**
+	 * Parameter indexes that are never logged as value. Mask is indexed by parameter position
+	 */
+	final boolean[] paramExcluded;
+
+	/**
+	 * notTypes that must be checked against runtime type of argument. Empty when there is nothing to check
+	 */
+	final Class<?>[] notTypes;
+
+	final int maxLength;
+
+	final int preview;
+
+	final boolean logTime;
+
+	final TimeUnit timeUnit;
+
+	/**
+	 * Abbreviation of timeUnit
+	 */
+	final String timeUnitSuffix;
+
+	final Clock clock;
+
+	/**
+	 * null when every execution is logged
+	 */
+	final Sampler sampler;
+
+	final boolean forceValues;
+
+	/**
+	 * null when statistics are not collected
+	 */
+	final ExecStats stats;
+
+	/**
+	 * {@link StatsRegistry#getEvictions()} when statistics were requested but registry was full, -1 otherwise
+	 */
+	final long statsRejected;
+
+	final boolean stackTrace;
+
+	LogPlan(Signature signature, Logged annotation, LogPlan next, LogOverrides overrides) {
+		this.config = annotation;
+		this.overrides = overrides;
+		this.next = next;
+		this.className = getLoggerName(signature);
+		this.logger = LoggerFactory.getLogger(className);
+		this.name = signature.getName();
+		this.killed = overrides.isKilled(className);
+		final Logged config = overrides.apply(className, name, annotation);
+		this.format = config.format() == Logged.Format.DEFAULT ? DEFAULT_FORMAT : config.format();
+
+		Logged.Mode mode = config.mode();
+		this.logEnter = mode == Logged.Mode.AROUND || mode == Logged.Mode.ENTER;
+		this.logExit = mode == Logged.Mode.AROUND || mode == Logged.Mode.EXIT;
+		this.logSlow = mode == Logged.Mode.SLOW;
+
+		this.notTypes = config.notTypes();
+		final int[] notParIdxs = config.notParIdxs();
+
+		Class<?>[] paramTypes = (signature instanceof CodeSignature) ? ((CodeSignature) signature).getParameterTypes()
+				: new Class<?>[0];
+		this.paramExcluded = new boolean[paramTypes.length];
+		for (int i = 0; i < paramTypes.length; ++i) {
+			paramExcluded[i] = contains(notParIdxs, i) || isNotType(paramTypes[i], notTypes);
+		}
+
+		if (signature instanceof MethodSignature) {
+			Class<?> returnType = ((MethodSignature) signature).getReturnType();
+			this.isVoid = returnType == void.class;
+			this.asyncResult = AsyncResults.isAsyncType(returnType);
+			this.retValExcluded = contains(notParIdxs, RETURN_VALUE_IDX) || isNotType(returnType, notTypes);
+		} else {
+			this.isVoid = true; //constructor
+			this.asyncResult = false;
+			this.retValExcluded = true;
+		}
+		this.logRetVal = config.logRetVal() && !isVoid;
+
+		this.maxLength = config.maxLength();
+		this.preview = config.preview();
+		this.logTime = config.logTime();
+		this.timeUnit = config.timeUnit();
+		this.timeUnitSuffix = getSuffix(timeUnit);
+		this.slowNanos = timeUnit.toNanos(config.slowThreshold());
+		this.clock = Clock.getInstance(config.clock());
+		this.sampler = Sampler.create(config.sampleEvery(), config.maxPerSecond());
+		this.forceValues = config.forceValues();
+		if (config.statistics() && !killed) {
+			long evictions = StatsRegistry.getEvictions();
+			this.stats = StatsRegistry.getOrCreate(signature);
+			this.statsRejected = stats == null ? evictions : -1;
+		} else {
+			this.stats = null;
+			this.statsRejected = -1;
+		}
+		this.stackTrace = config.stackTrace();
+	}
+
+	/**
+	 * @return true when statistics were evicted or registry was full and something was evicted since
+	 */
+	boolean isStatsStale() {
+		if (stats != null) {
+			return stats.evicted;
+		}
+		return statsRejected != -1 && statsRejected != StatsRegistry.getEvictions();
+	}
+
+	/**
+	 * @return true when argument on index should be logged as value
+	 */
+	boolean isParamValue(int index, Object value) {
+		if (index < paramExcluded.length && paramExcluded[index]) {
+			return false;
+		}
+		return notTypes.length == 0 || !isNotType(value.getClass(), notTypes);
+	}
+
+	/**
+	 * @return true when return value should be logged as value
+	 */
+	boolean isRetValValue(Object value) {
+		if (retValExcluded) {
+			return false;
+		}
+		return notTypes.length == 0 || !isNotType(value.getClass(), notTypes);
+	}
+
+	/**
+	 * @return execution time converted to configured TimeUnit
+	 */
+	long toTimeUnit(long nanos) {
+		return timeUnit.convert(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Invalid value (including DEFAULT) is reported and replaced by TEXT, so configuration typo does not break every @Logged method
+	 */
+	static Logged.Format parseFormat(String value) {
+		if (value == null) {
+			return Logged.Format.TEXT;
+		}
+		try {
+			Logged.Format format = Logged.Format.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+			if (format != Logged.Format.DEFAULT) {
+				return format;
+			}
+		} catch (IllegalArgumentException iax) {
+			//reported below
+		}
+		LoggerFactory.getLogger(LogAspect.class).warn("Invalid LogAspect.format " + value + ". Using " + Logged.Format.TEXT);
+		return Logged.Format.TEXT;
+	}
+
+	private static String getSuffix(TimeUnit timeUnit) {
+		switch (timeUnit) {
+		case NANOSECONDS:
+			return "ns";
+		case MICROSECONDS:
+			return "\u00B5s";
+		case MILLISECONDS:
+			return "ms";
+		case SECONDS:
+			return "s";
+		default:
+			return timeUnit.name().toLowerCase();
+		}
+	}
+
+	private static String getLoggerName(Signature signature) {
+		String className = signature.getDeclaringType().getName();
+		//String className = jp.getTarget().getClass().getName(); null target for static method
+		final int idxCglib = className.indexOf("$$EnhancerByCGLIB$$");
+		if (idxCglib != -1) {
+			className = className.substring(0, idxCglib);
+		}
+		return className;
+	}
+
+	private static boolean contains(int[] array, int value) {
+		for (int i = 0; i < array.length; ++i) {
+			if (array[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isNotType(Class<?> type, Class<?>[] notTypes) {
+		for (int i = 0; i < notTypes.length; ++i) {
+			if (notTypes[i].isAssignableFrom(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Plans of join points of one declaring class. Signatures are held weakly because Signature references its class,
+	 * while Table is kept in {@link WeakClassCache} keyed by that class.
+	 *
+	 * Lookup is lock-free identity scan, updates are synchronized copy-on-write - classes have few join points
+	 */
+	static final class Table {
+
+		private volatile Entry[] entries = new Entry[0];
+
+		/**
+		 * @return head of plan chain or null
+		 */
+		LogPlan get(Signature signature) {
+			Entry[] entries = this.entries;
+			for (int i = 0; i < entries.length; ++i) {
+				if (entries[i].get() == signature) {
+					return entries[i].plan;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Replaces expected head of plan chain (null when there is none yet)
+		 *
+		 * @return false when head was changed meanwhile
+		 */
+		synchronized boolean replace(Signature signature, LogPlan expected, LogPlan plan) {
+			Entry[] entries = this.entries;
+			for (int i = 0; i < entries.length; ++i) {
+				if (entries[i].get() == signature) {
+					if (entries[i].plan != expected) {
+						return false;
+					}
+					entries[i].plan = plan;
+					return true;
+				}
+			}
+			if (expected != null) {
+				return false;
+			}
+			Entry[] copy = new Entry[entries.length + 1];
+			System.arraycopy(entries, 0, copy, 0, entries.length);
+			copy[entries.length] = new Entry(signature, plan);
+			this.entries = copy;
+			return true;
+		}
+
+		int size() {
+			return entries.length;
+		}
+
+		private static final class Entry extends WeakReference<Signature> {
+
+			volatile LogPlan plan;
+
+			Entry(Signature signature, LogPlan plan) {
+				super(signature);
+				this.plan = plan;
+			}
+		}
+	}
+}
@@ -7,6 +7,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author vanek
@@ -19,6 +20,11 @@ public @interface Logged {
 
 	Mode mode() default Mode.AROUND;
 
+	/**
+	 * @return text, key-value or JSON messages. DEFAULT is TEXT or what is set by -DLogAspect.format=text|key_value|json
+	 */
+	Format format() default Format.DEFAULT;
+
 	/**
 	 * @return parameter types that never should be logged as value
 	 */
@@ -34,6 +40,11 @@ public @interface Logged {
 	 */
 	int maxLength() default Integer.MAX_VALUE;
 
+	/**
+	 * @return number of first Collection, Map or array elements logged with its size. Only within maxLength
+	 */
+	int preview() default 0;
+
 	/**
 	 * @return true if return type/value should be logged
 	 */
@@ -44,6 +55,33 @@ public @interface Logged {
 	 */
 	boolean logTime() default true;
 
+	/**
+	 * @return unit of logged execution time
+	 */
+	TimeUnit timeUnit() default TimeUnit.MILLISECONDS;
+
+	/**
+	 * @return Mode.SLOW logs only executions taking at least slowThreshold (in timeUnit)
+	 */
+	long slowThreshold() default 0;
+
+	/**
+	 * @return time source for execution time measurement. Clock.class means default {@link Clock}
+	 */
+	Class<? extends Clock> clock() default Clock.class;
+
+	/**
+	 * @return log only every N-th execution (1st, N+1th, 2N+1th,...). Values 1 and less mean every execution.
+	 * Exceptions are logged always. Statistics count every execution
+	 */
+	int sampleEvery() default 1;
+
+	/**
+	 * @return log at most N executions per second. 0 means no limit.
+	 * Exceptions are logged always. Statistics count every execution
+	 */
+	int maxPerSecond() default 0;
+
 	/**
 	 * @return true if parameter value should be always logged regardless log level
 	 */
@@ -60,11 +98,32 @@ public @interface Logged {
 	boolean statistics() default false;
 
 	/**
-	 * @return print stackTrace when exception happens
+	 * @return print stackTrace when exception happens. With {@link ExceptionFingerprints} window set (disabled by default)
+	 * only first of repeated exceptions is logged in window
 	 */
 	boolean stackTrace() default false;
 
 	enum Mode {
-		ENTER, EXIT, AROUND;
+		ENTER, EXIT, AROUND,
+		/**
+		 * Nothing for fast executions. Single line with arguments, return value and time for executions slower than slowThreshold
+		 */
+		SLOW;
+	}
+
+	enum Format {
+		DEFAULT,
+		/**
+		 * >>myMethod(works,5)>> and <<myMethod: something works<< 1ms
+		 */
+		TEXT,
+		/**
+		 * phase=exit class=example.Example method=myMethod result="something works" duration=1 unit=ms
+		 */
+		KEY_VALUE,
+		/**
+		 * {"phase":"exit","class":"example.Example","method":"myMethod","result":"something works","duration":1,"unit":"ms"}
+		 */
+		JSON;
 	}
 }
@@ -0,0 +1,62 @@
+package net.anthavio.aspect;
+
+/**
+ * Per thread reusable StringBuilder for {@link LogAspect} messages, so only the final message String is allocated.
+ *
+ * toString() of logged value may execute another @Logged method on the same thread. Such nested message gets fresh
+ * StringBuilder instead of corrupting the one being built. Buffer grown over {@value #MAX_CAPACITY} chars is discarded
+ * on release, so one huge value does not stay retained by (possibly pooled or virtual) thread forever.
+ *
+ * Usage is always acquire(), build, toString(), release() in finally block.
+ *
+ * @author vanek
+ *
+ */
+final class MessageBuffer {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private static final int MAX_CAPACITY = 16 * 1024;
+
+	private static final ThreadLocal<MessageBuffer> buffers = new ThreadLocal<MessageBuffer>() {
+
+		@Override
+		protected MessageBuffer initialValue() {
+			return new MessageBuffer();
+		}
+	};
+
+	private final StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+
+	private boolean busy;
+
+	private MessageBuffer() {
+	}
+
+	/**
+	 * @return empty StringBuilder. Thread's own one or new one when thread's own is already in use (reentrant call)
+	 */
+	static StringBuilder acquire() {
+		MessageBuffer buffer = buffers.get();
+		if (buffer.busy) {
+			return new StringBuilder(INITIAL_CAPACITY);
+		}
+		buffer.busy = true;
+		return buffer.builder;
+	}
+
+	/**
+	 * Returns StringBuilder obtained from {@link #acquire()} back for reuse
+	 */
+	static void release(StringBuilder builder) {
+		MessageBuffer buffer = buffers.get();
+		if (buffer.builder == builder) {
+			if (builder.capacity() > MAX_CAPACITY) {
+				buffers.remove();
+			} else {
+				builder.setLength(0);
+				buffer.busy = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package net.anthavio.aspect;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free per join point decision whether execution should be logged. See {@link Logged#sampleEvery()} and {@link Logged#maxPerSecond()}
+ *
+ * 1-in-N sampling is deterministic - executions 1, N+1, 2N+1,... are logged.
+ * Rate limit lets through first maxPerSecond executions of every second. Window index and count are packed
+ * into single AtomicLong, so once the limit is reached, decision is just a read without write.
+ *
+ * @author vanek
+ *
+ */
+final class Sampler {
+
+	private static final int COUNT_BITS = 24;
+
+	private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+	static final int MAX_PER_SECOND = (int) COUNT_MASK;
+
+	private static final long SECOND = 1000000000L;
+
+	private final int every;
+
+	private final int maxPerSecond;
+
+	private final AtomicLong executions = new AtomicLong();
+
+	/**
+	 * window (second) << COUNT_BITS | count of executions logged in that window
+	 */
+	private final AtomicLong window = new AtomicLong();
+
+	private Sampler(int every, int maxPerSecond) {
+		this.every = every;
+		this.maxPerSecond = maxPerSecond;
+	}
+
+	/**
+	 * @return null when every execution is logged
+	 */
+	static Sampler create(int every, int maxPerSecond) {
+		if (every <= 1 && maxPerSecond <= 0) {
+			return null;
+		}
+		return new Sampler(every, Math.min(maxPerSecond, MAX_PER_SECOND));
+	}
+
+	/**
+	 * @param nanos current time of execution's {@link Clock}
+	 * @return true when execution should be logged
+	 */
+	boolean sample(long nanos) {
+		if (every > 1 && executions.getAndIncrement() % every != 0) {
+			return false;
+		}
+		return maxPerSecond <= 0 || acquire(nanos / SECOND);
+	}
+
+	private boolean acquire(long second) {
+		long current = (second << COUNT_BITS) & ~COUNT_MASK;
+		while (true) {
+			long state = window.get();
+			if ((state & ~COUNT_MASK) != current) {
+				//first execution in new second
+				if (window.compareAndSet(state, current | 1)) {
+					return true;
+				}
+			} else if ((state & COUNT_MASK) >= maxPerSecond) {
+				return false;
+			} else if (window.compareAndSet(state, state + 1)) {
+				return true;
+			}
+		}
+	}
+}
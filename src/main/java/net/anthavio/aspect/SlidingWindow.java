@@ -0,0 +1,89 @@
+package net.anthavio.aspect;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring of {@value #BUCKETS} one minute buckets counting executions, exceptions and execution time, so statistics of the
+ * last 1 up to {@value #BUCKETS} minutes can be read beside lifetime totals.
+ *
+ * Bucket is picked by wall-clock minute of execution and reused (zeroed) when the same slot is hit {@value #BUCKETS}
+ * minutes later. Window of N minutes is current (partial) minute plus N-1 previous ones. Executions recorded exactly
+ * while bucket is being rotated might be lost.
+ *
+ * Recording is thread safe, lock-free and does not allocate. Memory footprint is {@value #BUCKETS} * {@value #FIELDS} * 8 bytes (480 B)
+ *
+ * @author vanek
+ *
+ */
+final class SlidingWindow implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int BUCKETS = 15;
+
+	static final long BUCKET_MILLIS = 60 * 1000;
+
+	private static final int FIELDS = 4;
+
+	private static final int MINUTE = 0;
+
+	private static final int EXECUTIONS = 1;
+
+	private static final int EXCEPTIONS = 2;
+
+	private static final int TOTAL_NANOS = 3;
+
+	private final AtomicLongArray cells = new AtomicLongArray(BUCKETS * FIELDS);
+
+	void record(long timestampMillis, long execNanos, boolean exception) {
+		long minute = timestampMillis / BUCKET_MILLIS;
+		int base = (int) (minute % BUCKETS) * FIELDS;
+		long stamp = cells.get(base + MINUTE);
+		while (stamp != minute) {
+			if (stamp > minute) {
+				return; //wall-clock stepped back more than ring covers
+			} else if (cells.compareAndSet(base + MINUTE, stamp, minute)) {
+				cells.set(base + EXECUTIONS, 0);
+				cells.set(base + EXCEPTIONS, 0);
+				cells.set(base + TOTAL_NANOS, 0);
+				break;
+			}
+			stamp = cells.get(base + MINUTE);
+		}
+		cells.incrementAndGet(base + EXECUTIONS);
+		cells.addAndGet(base + TOTAL_NANOS, execNanos);
+		if (exception) {
+			cells.incrementAndGet(base + EXCEPTIONS);
+		}
+	}
+
+	/**
+	 * @param minutes 1 - {@value #BUCKETS}
+	 * @param nowMillis wall-clock time window ends at
+	 */
+	ExecStats.Window sum(int minutes, long nowMillis) {
+		if (minutes < 1 || minutes > BUCKETS) {
+			throw new IllegalArgumentException("Window must be 1 - " + BUCKETS + " minutes: " + minutes);
+		}
+		long current = nowMillis / BUCKET_MILLIS;
+		long executions = 0;
+		long exceptions = 0;
+		long totalNanos = 0;
+		for (long minute = current - minutes + 1; minute <= current; ++minute) {
+			int base = (int) (minute % BUCKETS) * FIELDS;
+			if (cells.get(base + MINUTE) == minute) {
+				executions += cells.get(base + EXECUTIONS);
+				exceptions += cells.get(base + EXCEPTIONS);
+				totalNanos += cells.get(base + TOTAL_NANOS);
+			}
+		}
+		return new ExecStats.Window(minutes, executions, exceptions, totalNanos);
+	}
+
+	void reset() {
+		for (int i = 0; i < cells.length(); ++i) {
+			cells.set(i, 0);
+		}
+	}
+}
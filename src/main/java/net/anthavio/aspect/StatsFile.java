@@ -0,0 +1,403 @@
+package net.anthavio.aspect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes {@link ExecStats} into fixed layout memory mapped file (in spirit of hsperfdata), so they can be read by
+ * other process using {@link StatsFileReader} without JMX. Content survives crash of the JVM.
+ *
+ * Executing threads record into in-memory {@link ExecStats} as usual. Shared background thread copies them into the file
+ * every interval, so recording stays lock-free and contention-free. Every method has its own slot.
+ *
+ * Plain writes into mapped memory are not ordered for reader in other process (on ARM and other weakly ordered CPUs
+ * reader may see new data with old sequence), so slot carries checksum of its content written after the content.
+ * Reader accepts only slot whose checksum matches content it read and retries otherwise. Sequence number (odd while
+ * slot is being written) is only hint to retry without computing checksum.
+ *
+ * Layout (big endian)
+ * <pre>
+ * header (64 bytes): int magic, int version, int slotSize, int slotCount, int buckets, int usedSlots, long startMillis, long updateMillis
+ * slot: long sequence, long checksum, short nameLength, byte[254] name (UTF-8), long executions, long exceptions, long totalNanos,
+ *       long totalSelfNanos, long maxNanos, long lastExecutionMillis, long[buckets] histogram of successful executions
+ * </pre>
+ * Methods that do not fit into slotCount slots are not published (warning is logged once). Slot of statistics evicted from
+ * {@link StatsRegistry} is freed - rewritten with empty name, which reader skips - and reused for another method.
+ * Names longer than 254 bytes are truncated on character boundary.
+ *
+ * Restarted writer reuses existing file of the same size in place, so reader started before keeps valid mapping and sees
+ * new content. File of different size is resized - readers must be restarted then, because accessing mapping of shrunk
+ * file crashes them.
+ *
+ * Start it using {@link #start(File, int, long)} or system properties
+ * java -DLogAspect.statsFile=/var/tmp/myapp.stats -DLogAspect.statsFile.slots=256 -DLogAspect.statsFile.interval=1000 com.something.MainClass
+ *
+ * @author vanek
+ *
+ */
+public final class StatsFile {
+
+	static final int MAGIC = 0x4C415354; //LAST
+
+	static final int VERSION = 2;
+
+	static final int HEADER_SIZE = 64;
+
+	static final int H_MAGIC = 0;
+
+	static final int H_VERSION = 4;
+
+	static final int H_SLOT_SIZE = 8;
+
+	static final int H_SLOTS = 12;
+
+	static final int H_BUCKETS = 16;
+
+	static final int H_USED = 20;
+
+	static final int H_START_MILLIS = 24;
+
+	static final int H_UPDATE_MILLIS = 32;
+
+	static final int NAME_SIZE = 256;
+
+	static final int S_SEQUENCE = 0;
+
+	static final int S_CHECKSUM = 8;
+
+	static final int S_NAME = 16;
+
+	static final int S_EXECUTIONS = S_NAME + NAME_SIZE;
+
+	static final int S_EXCEPTIONS = S_EXECUTIONS + 8;
+
+	static final int S_TOTAL_NANOS = S_EXCEPTIONS + 8;
+
+	static final int S_SELF_NANOS = S_TOTAL_NANOS + 8;
+
+	static final int S_MAX_NANOS = S_SELF_NANOS + 8;
+
+	static final int S_LAST_EXECUTION = S_MAX_NANOS + 8;
+
+	static final int S_BUCKETS = S_LAST_EXECUTION + 8;
+
+	static final int SLOT_SIZE = S_BUCKETS + LatencyHistogram.BUCKETS * 8;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final long CHECKSUM_SEED = 0x4C415354L; //LAST
+
+	private static final byte[] NO_NAME = new byte[0];
+
+	private static final Logger log = LoggerFactory.getLogger(StatsFile.class);
+
+	private static StatsFile current;
+
+	private static ScheduledFuture<?> scheduled;
+
+	private static boolean hookRegistered;
+
+	private final File file;
+
+	private final RandomAccessFile raf;
+
+	private final MappedByteBuffer buffer;
+
+	private final int slotCount;
+
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+	/**
+	 * Truncated UTF-8 names by slot index - part of checksum
+	 */
+	private final byte[][] names;
+
+	/**
+	 * Slots freed by evicted statistics
+	 */
+	private final List<Integer> free = new ArrayList<Integer>();
+
+	/**
+	 * Slots ever used - H_USED
+	 */
+	private int used;
+
+	private boolean overflowLogged;
+
+	private StatsFile(File file, int slotCount) throws IOException {
+		this.file = file;
+		this.slotCount = slotCount;
+		this.names = new byte[slotCount][];
+		this.raf = new RandomAccessFile(file, "rw");
+		try {
+			long size = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+			if (raf.length() != size) {
+				raf.setLength(size);
+			}
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException iox) {
+			raf.close();
+			throw iox;
+		}
+		//previous content is not ours. Cleared in place, so mapping of running reader stays valid
+		buffer.putInt(H_MAGIC, 0);
+		byte[] zeros = new byte[4096];
+		ByteBuffer view = buffer.duplicate();
+		view.position(0);
+		while (view.hasRemaining()) {
+			view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+		}
+		buffer.putInt(H_SLOT_SIZE, SLOT_SIZE);
+		buffer.putInt(H_SLOTS, slotCount);
+		buffer.putInt(H_BUCKETS, LatencyHistogram.BUCKETS);
+		buffer.putInt(H_USED, 0);
+		buffer.putLong(H_START_MILLIS, System.currentTimeMillis());
+		buffer.putInt(H_VERSION, VERSION);
+		buffer.putInt(H_MAGIC, MAGIC);
+	}
+
+	/**
+	 * Starts publishing when -DLogAspect.statsFile is set. Called once {@link StatsRegistry} is initialized
+	 */
+	static void configure() {
+		String path = System.getProperty("LogAspect.statsFile");
+		if (path != null) {
+			try {
+				int slots = Integer.parseInt(System.getProperty("LogAspect.statsFile.slots", "256"));
+				long interval = Long.parseLong(System.getProperty("LogAspect.statsFile.interval", "1000"));
+				start(new File(path), slots, interval);
+			} catch (IllegalArgumentException iax) {
+				log.warn("Invalid LogAspect.statsFile configuration", iax);
+			} catch (IOException iox) {
+				log.warn("Cannot create statistics file " + path, iox);
+			}
+		}
+	}
+
+	/**
+	 * Creates (or overwrites) file and starts publishing into it, replacing previously started one
+	 *
+	 * @param slots maximal number of methods in the file
+	 * @param intervalMillis how often are statistics copied into the file
+	 */
+	public static synchronized void start(File file, int slots, long intervalMillis) throws IOException {
+		if (slots <= 0) {
+			throw new IllegalArgumentException("Slots must be positive " + slots);
+		}
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException("Interval must be positive " + intervalMillis);
+		}
+		stop();
+		current = new StatsFile(file, slots);
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					publish();
+				} catch (RuntimeException rx) {
+					log.warn("Statistics file publishing failed", rx);
+				}
+			}
+		};
+		scheduled = Background.executor().scheduleAtFixedRate(task, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		if (!hookRegistered) {
+			hookRegistered = true;
+			//JVM exit - final values
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					publish();
+				}
+			}, "LogAspect-StatsFile-Shutdown"));
+		}
+	}
+
+	/**
+	 * Publishes last values and stops. File is left in place. Mapping is released when buffer is garbage collected.
+	 */
+	public static synchronized void stop() {
+		if (current != null) {
+			scheduled.cancel(false);
+			scheduled = null;
+			current.write();
+			current.close();
+			current = null;
+		}
+	}
+
+	/**
+	 * @return file being published into or null when not started
+	 */
+	public static synchronized File getFile() {
+		return current != null ? current.file : null;
+	}
+
+	/**
+	 * Copies current statistics into the file immediately
+	 */
+	public static synchronized void publish() {
+		if (current != null) {
+			current.write();
+		}
+	}
+
+	private void write() {
+		release();
+		for (String name : StatsRegistry.getNames()) {
+			ExecStats stats = StatsRegistry.get(name);
+			if (stats == null) {
+				continue; //evicted meanwhile
+			}
+			Integer slot = slots.get(name);
+			if (slot == null) {
+				if (!free.isEmpty()) {
+					slot = free.remove(free.size() - 1);
+				} else if (used < slotCount) {
+					slot = used;
+				} else {
+					if (!overflowLogged) {
+						overflowLogged = true;
+						log.warn("Statistics file " + file + " is full. Increase LogAspect.statsFile.slots " + slotCount);
+					}
+					continue;
+				}
+				slots.put(name, slot);
+				names[slot] = truncate(name.getBytes(UTF8), NAME_SIZE - 2);
+				writeSlot(offset(slot), names[slot], true, stats);
+				if (slot == used) {
+					buffer.putInt(H_USED, ++used); //reader validates slot by checksum
+				}
+			} else {
+				writeSlot(offset(slot), names[slot], false, stats);
+			}
+		}
+		buffer.putLong(H_UPDATE_MILLIS, System.currentTimeMillis());
+	}
+
+	/**
+	 * Frees slots of statistics evicted from {@link StatsRegistry}, so long running application with changing methods
+	 * does not fill the file
+	 */
+	private void release() {
+		Iterator<Map.Entry<String, Integer>> iterator = slots.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Integer> entry = iterator.next();
+			if (StatsRegistry.get(entry.getKey()) == null) {
+				iterator.remove();
+				int slot = entry.getValue();
+				names[slot] = null;
+				clearSlot(offset(slot));
+				free.add(slot);
+			}
+		}
+	}
+
+	/**
+	 * Empty name and zero values with valid checksum, so reader skips slot instead of retrying
+	 */
+	private void clearSlot(int offset) {
+		long sequence = buffer.getLong(offset + S_SEQUENCE);
+		buffer.putLong(offset + S_SEQUENCE, sequence + 1); //odd - writing
+		buffer.putShort(offset + S_NAME, (short) 0);
+		long checksum = checksum(CHECKSUM_SEED, NO_NAME);
+		for (int index = S_EXECUTIONS; index < SLOT_SIZE; index += 8) {
+			checksum = putLong(offset + index, 0, checksum);
+		}
+		buffer.putLong(offset + S_CHECKSUM, checksum);
+		buffer.putLong(offset + S_SEQUENCE, sequence + 2); //even - complete
+	}
+
+	/**
+	 * @param writeName only for the first write into slot
+	 */
+	private void writeSlot(int offset, byte[] name, boolean writeName, ExecStats stats) {
+		LatencyHistogram.Snapshot histogram = stats.getHistogram().snapshot();
+		long sequence = buffer.getLong(offset + S_SEQUENCE);
+		buffer.putLong(offset + S_SEQUENCE, sequence + 1); //odd - writing
+		if (writeName) {
+			buffer.putShort(offset + S_NAME, (short) name.length);
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset + S_NAME + 2);
+			view.put(name);
+		}
+		long checksum = checksum(CHECKSUM_SEED, name);
+		checksum = putLong(offset + S_EXECUTIONS, stats.getExecutions(), checksum);
+		checksum = putLong(offset + S_EXCEPTIONS, stats.getExceptions(), checksum);
+		checksum = putLong(offset + S_TOTAL_NANOS, stats.getTotalNanos(), checksum);
+		checksum = putLong(offset + S_SELF_NANOS, stats.getTotalSelfNanos(), checksum);
+		checksum = putLong(offset + S_MAX_NANOS, histogram.getMax(), checksum);
+		checksum = putLong(offset + S_LAST_EXECUTION, stats.getLastExecutionMillis(), checksum);
+		for (int i = 0; i < LatencyHistogram.BUCKETS; ++i) {
+			checksum = putLong(offset + S_BUCKETS + i * 8, histogram.bucket(i), checksum);
+		}
+		buffer.putLong(offset + S_CHECKSUM, checksum);
+		buffer.putLong(offset + S_SEQUENCE, sequence + 2); //even - complete
+	}
+
+	private long putLong(int index, long value, long checksum) {
+		buffer.putLong(index, value);
+		return checksum(checksum, value);
+	}
+
+	/**
+	 * @return checksum of name length and bytes - continued by {@link #checksum(long, long)} of every value
+	 */
+	static long checksum(long seed, byte[] name) {
+		long checksum = checksum(seed, name.length);
+		for (int i = 0; i < name.length; ++i) {
+			checksum = checksum(checksum, name[i]);
+		}
+		return checksum;
+	}
+
+	static long checksum(long checksum, long value) {
+		long hash = (checksum ^ value) * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 29);
+	}
+
+	/**
+	 * @return bytes cut to at most max length without splitting UTF-8 sequence
+	 */
+	static byte[] truncate(byte[] bytes, int max) {
+		if (bytes.length <= max) {
+			return bytes;
+		}
+		int length = max;
+		while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+			--length; //continuation byte - character starts before
+		}
+		byte[] truncated = new byte[length];
+		System.arraycopy(bytes, 0, truncated, 0, length);
+		return truncated;
+	}
+
+	private void close() {
+		buffer.force();
+		try {
+			raf.close();
+		} catch (IOException iox) {
+			log.warn("Failed to close " + file, iox);
+		}
+	}
+
+	static int offset(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+}
@@ -0,0 +1,249 @@
+package net.anthavio.aspect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads statistics file written by {@link StatsFile} - from another process, or after crash of the JVM that wrote it.
+ *
+ * Command line usage (refresh every 5 seconds, or print once without interval)
+ * java -cp anthavio-aspects.jar net.anthavio.aspect.StatsFileReader /var/tmp/myapp.stats 5
+ *
+ * @author vanek
+ *
+ */
+public final class StatsFileReader {
+
+	private static final int MAX_RETRIES = 100;
+
+	private final File file;
+
+	private final MappedByteBuffer buffer;
+
+	private final int slotSize;
+
+	public StatsFileReader(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() < StatsFile.HEADER_SIZE) {
+				throw new IOException("Not a statistics file " + file);
+			}
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close(); //mapping stays valid
+		}
+		if (buffer.getInt(StatsFile.H_MAGIC) != StatsFile.MAGIC) {
+			throw new IOException("Not a statistics file " + file);
+		}
+		if (buffer.getInt(StatsFile.H_VERSION) != StatsFile.VERSION
+				|| buffer.getInt(StatsFile.H_BUCKETS) != LatencyHistogram.BUCKETS) {
+			throw new IOException("Unsupported statistics file version " + buffer.getInt(StatsFile.H_VERSION) + " " + file);
+		}
+		this.slotSize = buffer.getInt(StatsFile.H_SLOT_SIZE);
+		if (slotSize != StatsFile.SLOT_SIZE) {
+			throw new IOException("Unexpected slot size " + slotSize + " " + file);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return wall-clock time when writer started
+	 */
+	public long getStartMillis() {
+		return buffer.getLong(StatsFile.H_START_MILLIS);
+	}
+
+	/**
+	 * @return wall-clock time of last publication. Old one means that writer is not running anymore
+	 */
+	public long getUpdateMillis() {
+		return buffer.getLong(StatsFile.H_UPDATE_MILLIS);
+	}
+
+	/**
+	 * @return consistent copy of every published slot. Empty while writer is (re)starting
+	 */
+	public List<Slot> read() {
+		if (buffer.getInt(StatsFile.H_MAGIC) != StatsFile.MAGIC) {
+			return new ArrayList<Slot>(0);
+		}
+		int used = Math.min(buffer.getInt(StatsFile.H_USED), (buffer.capacity() - StatsFile.HEADER_SIZE) / slotSize);
+		List<Slot> slots = new ArrayList<Slot>(used);
+		for (int i = 0; i < used; ++i) {
+			Slot slot = read(StatsFile.HEADER_SIZE + i * slotSize);
+			if (slot != null && slot.name.length() != 0) { //empty name - freed slot
+				slots.add(slot);
+			}
+		}
+		return slots;
+	}
+
+	/**
+	 * @return null when slot was being written (or checksum did not match) during all retries
+	 */
+	private Slot read(int offset) {
+		for (int retry = 0; retry < MAX_RETRIES; ++retry) {
+			long sequence = buffer.getLong(offset + StatsFile.S_SEQUENCE);
+			if ((sequence & 1) != 0) {
+				Thread.yield(); //writing
+				continue;
+			}
+			Slot slot = new Slot(buffer, offset);
+			if (slot.checksum == buffer.getLong(offset + StatsFile.S_CHECKSUM)
+					&& sequence == buffer.getLong(offset + StatsFile.S_SEQUENCE)) {
+				return slot;
+			}
+			Thread.yield();
+		}
+		return null;
+	}
+
+	@ApiPolicyOverride
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0 || args.length > 2) {
+			System.err.println("Usage: java " + StatsFileReader.class.getName() + " <statistics file> [refresh seconds]");
+			System.exit(1);
+		}
+		StatsFileReader reader = new StatsFileReader(new File(args[0]));
+		long interval = args.length == 2 ? Long.parseLong(args[1]) : 0;
+		do {
+			System.out.println(format(reader));
+			if (interval > 0) {
+				Thread.sleep(interval * 1000);
+			}
+		} while (interval > 0);
+	}
+
+	/**
+	 * @return printable table of all slots
+	 */
+	static String format(StatsFileReader reader) {
+		List<Slot> slots = reader.read();
+		int width = "signature".length();
+		for (Slot slot : slots) {
+			width = Math.max(width, slot.name.length());
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(reader.file).append(" updated ").append(new Date(reader.getUpdateMillis()));
+		sb.append(String.format(Locale.ENGLISH, "%n%-" + width + "s %12s %10s %10s %10s %10s %10s", "signature",
+				"executions", "exceptions", "mean ms", "self ms", "p99 ms", "max ms"));
+		String row = "%n%-" + width + "s %12d %10d %10.3f %10.3f %10.3f %10.3f";
+		for (Slot slot : slots) {
+			sb.append(String.format(Locale.ENGLISH, row, slot.name, slot.executions, slot.exceptions,
+					slot.getAverageNanos() / 1000000.0, slot.getAverageSelfNanos() / 1000000.0,
+					slot.histogram.getValueAtPercentile(99) / 1000000.0, slot.histogram.getMax() / 1000000.0));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Statistics of single method read from the file
+	 */
+	public static class Slot {
+
+		private final String name;
+
+		private final long executions;
+
+		private final long exceptions;
+
+		private final long totalNanos;
+
+		private final long totalSelfNanos;
+
+		private final long lastExecutionMillis;
+
+		private final LatencyHistogram.Snapshot histogram;
+
+		/**
+		 * Computed from values read, compared with the one written by writer
+		 */
+		private final long checksum;
+
+		Slot(ByteBuffer buffer, int offset) {
+			int length = Math.min(buffer.getShort(offset + StatsFile.S_NAME), StatsFile.NAME_SIZE - 2);
+			byte[] bytes = new byte[Math.max(0, length)];
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset + StatsFile.S_NAME + 2);
+			view.get(bytes);
+			this.name = new String(bytes, StatsFile.UTF8);
+			long checksum = StatsFile.checksum(StatsFile.CHECKSUM_SEED, bytes);
+			this.executions = buffer.getLong(offset + StatsFile.S_EXECUTIONS);
+			checksum = StatsFile.checksum(checksum, executions);
+			this.exceptions = buffer.getLong(offset + StatsFile.S_EXCEPTIONS);
+			checksum = StatsFile.checksum(checksum, exceptions);
+			this.totalNanos = buffer.getLong(offset + StatsFile.S_TOTAL_NANOS);
+			checksum = StatsFile.checksum(checksum, totalNanos);
+			this.totalSelfNanos = buffer.getLong(offset + StatsFile.S_SELF_NANOS);
+			checksum = StatsFile.checksum(checksum, totalSelfNanos);
+			long maxNanos = buffer.getLong(offset + StatsFile.S_MAX_NANOS);
+			checksum = StatsFile.checksum(checksum, maxNanos);
+			this.lastExecutionMillis = buffer.getLong(offset + StatsFile.S_LAST_EXECUTION);
+			checksum = StatsFile.checksum(checksum, lastExecutionMillis);
+			long[] counts = new long[LatencyHistogram.BUCKETS];
+			for (int i = 0; i < counts.length; ++i) {
+				counts[i] = buffer.getLong(offset + StatsFile.S_BUCKETS + i * 8);
+				checksum = StatsFile.checksum(checksum, counts[i]);
+			}
+			this.histogram = new LatencyHistogram.Snapshot(counts, maxNanos);
+			this.checksum = checksum;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getExecutions() {
+			return executions;
+		}
+
+		public long getExceptions() {
+			return exceptions;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getAverageNanos() {
+			return executions != 0 ? totalNanos / executions : 0;
+		}
+
+		public long getTotalSelfNanos() {
+			return totalSelfNanos;
+		}
+
+		public long getAverageSelfNanos() {
+			return executions != 0 ? totalSelfNanos / executions : 0;
+		}
+
+		public long getLastExecutionMillis() {
+			return lastExecutionMillis;
+		}
+
+		/**
+		 * @return durations of successful executions
+		 */
+		public LatencyHistogram.Snapshot getHistogram() {
+			return histogram;
+		}
+
+		@Override
+		public String toString() {
+			return name + " executions=" + executions + ", exceptions=" + exceptions + ", averageNanos=" + getAverageNanos()
+					+ ", " + histogram;
+		}
+	}
+}
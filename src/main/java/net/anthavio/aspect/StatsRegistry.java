@@ -0,0 +1,412 @@
+package net.anthavio.aspect;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.CodeSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Public access to {@link ExecStats} collected by {@link LogAspect} for @Logged(statistics = true) methods.
+ *
+ * Statistics are keyed by signature name in form of declaring.Class.method(fully.qualified.ParamType,int[])
+ *
+ * Every ExecStats can be also registered as JMX MBean named
+ * net.anthavio.aspect:type=ExecStats,class=declaring.Class,method="method(fully.qualified.ParamType,int[])"
+ * Registration happens on background thread, so it does not slow down first execution of the method.
+ * JMX is disabled by default. Enable it using {@link #setJmxEnabled(boolean)} or system property
+ * java -DLogAspect.jmx=true com.something.MainClass
+ *
+ * Number of statistics is limited to 1024 by default (~15 MB, see {@link ExecStats} for footprint). Method reaching full
+ * registry gets no statistics and background thread evicts (and unregisters from JMX) least recently executed statistics
+ * idle for 60 seconds at least, down to 7/8 of the limit. Methods of evicted statistics start with new empty ones on their
+ * next execution, methods without statistics get them when there is room again. When all statistics are busy, nothing
+ * is evicted and eviction is retried every minute. Limit is approximate - concurrently created statistics may exceed it slightly.
+ * Change limit using {@link #setMaxStats(int)} and idle time using {@link #setEvictionIdle(long, TimeUnit)} or system properties
+ * (0 limit is unlimited, idle in seconds)
+ * java -DLogAspect.stats.max=1024 -DLogAspect.stats.idle=60 com.something.MainClass
+ *
+ * Statistics are keyed by name only and do not reference classes, so they do not prevent redeployed application from being unloaded.
+ *
+ * @author vanek
+ *
+ */
+public final class StatsRegistry {
+
+	public static final String JMX_DOMAIN = "net.anthavio.aspect";
+
+	private static final Logger log = LoggerFactory.getLogger(StatsRegistry.class);
+
+	private static final ConcurrentMap<String, ExecStats> stats = new ConcurrentHashMap<String, ExecStats>();
+
+	private static final ConcurrentLinkedQueue<ExecStats> unregistered = new ConcurrentLinkedQueue<ExecStats>();
+
+	private static final AtomicBoolean registrationScheduled = new AtomicBoolean();
+
+	private static volatile boolean jmxEnabled = "true".equals(System.getProperty("LogAspect.jmx"));
+
+	private static volatile int maxStats;
+
+	private static volatile long idleMillis;
+
+	private static final AtomicLong evictions = new AtomicLong();
+
+	private static final AtomicLong rejections = new AtomicLong();
+
+	private static final AtomicBoolean evictionScheduled = new AtomicBoolean();
+
+	private static final Runnable EVICTION = new Runnable() {
+
+		@Override
+		public void run() {
+			evictionScheduled.set(false);
+			try {
+				evictIdle();
+			} catch (RuntimeException rx) {
+				log.warn("Statistics eviction failed", rx);
+			}
+			int max = maxStats;
+			if (max > 0 && stats.size() >= max) {
+				//everything busy, retry later
+				scheduleEviction(Math.max(1000, Math.min(idleMillis, TimeUnit.MINUTES.toMillis(1))));
+			}
+		}
+	};
+
+	private static final Comparator<ExecStats> LEAST_RECENTLY_USED = new Comparator<ExecStats>() {
+
+		@Override
+		public int compare(ExecStats o1, ExecStats o2) {
+			long used1 = o1.getLastUsedMillis();
+			long used2 = o2.getLastUsedMillis();
+			return used1 < used2 ? -1 : (used1 == used2 ? 0 : 1);
+		}
+	};
+
+	static {
+		String max = System.getProperty("LogAspect.stats.max", "1024");
+		try {
+			maxStats = Integer.parseInt(max);
+		} catch (NumberFormatException nfx) {
+			log.warn("Invalid LogAspect.stats.max " + max);
+			maxStats = 1024;
+		}
+		String idle = System.getProperty("LogAspect.stats.idle", "60");
+		try {
+			idleMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(idle));
+		} catch (NumberFormatException nfx) {
+			log.warn("Invalid LogAspect.stats.idle " + idle);
+			idleMillis = TimeUnit.SECONDS.toMillis(60);
+		}
+		StatsReporter.configure();
+		StatsFile.configure();
+	}
+
+	private StatsRegistry() {
+	}
+
+	/**
+	 * @return names of all methods having statistics
+	 */
+	public static Set<String> getNames() {
+		return Collections.unmodifiableSet(stats.keySet());
+	}
+
+	/**
+	 * @return live statistics or null if there is none for given name
+	 */
+	public static ExecStats get(String name) {
+		return stats.get(name);
+	}
+
+	/**
+	 * @return immutable copy of statistics or null if there is none for given name
+	 */
+	public static ExecStats.Snapshot snapshot(String name) {
+		ExecStats execStats = stats.get(name);
+		return execStats != null ? execStats.snapshot() : null;
+	}
+
+	/**
+	 * @return immutable copies of all statistics sorted by name
+	 */
+	public static Map<String, ExecStats.Snapshot> snapshot() {
+		Map<String, ExecStats.Snapshot> snapshot = new TreeMap<String, ExecStats.Snapshot>();
+		for (ExecStats execStats : stats.values()) {
+			snapshot.put(execStats.getName(), execStats.snapshot());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Resets statistics for given name
+	 *
+	 * @return false if there is no statistics for given name
+	 */
+	public static boolean reset(String name) {
+		ExecStats execStats = stats.get(name);
+		if (execStats != null) {
+			execStats.reset();
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Resets all statistics
+	 */
+	public static void reset() {
+		for (ExecStats execStats : stats.values()) {
+			execStats.reset();
+		}
+	}
+
+	public static boolean isJmxEnabled() {
+		return jmxEnabled;
+	}
+
+	/**
+	 * Registers (or unregisters) all existing statistics and {@link KillSwitch} as MBeans. Statistics created later are registered in background
+	 */
+	public static void setJmxEnabled(boolean enabled) {
+		jmxEnabled = enabled;
+		KillSwitch.setJmxRegistered(enabled);
+		for (ExecStats execStats : stats.values()) {
+			if (enabled) {
+				register(execStats);
+			} else {
+				unregister(execStats);
+			}
+		}
+	}
+
+	public static int getMaxStats() {
+		return maxStats;
+	}
+
+	/**
+	 * Sets limit of statistics count. Zero or negative is unlimited. Statistics over new limit are evicted when some method
+	 * reaches full registry
+	 */
+	public static void setMaxStats(int max) {
+		maxStats = max;
+	}
+
+	public static long getEvictionIdleMillis() {
+		return idleMillis;
+	}
+
+	/**
+	 * Sets how long statistics must not be executed to be evicted from full registry
+	 */
+	public static void setEvictionIdle(long idle, TimeUnit unit) {
+		idleMillis = Math.max(0, unit.toMillis(idle));
+	}
+
+	/**
+	 * @return number of statistics evicted or removed since start
+	 */
+	public static long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return number of times method did not get statistics because registry was full
+	 */
+	public static long getRejections() {
+		return rejections.get();
+	}
+
+	/**
+	 * Removes statistics for given name. Method gets new empty statistics on its next execution
+	 *
+	 * @return false if there is no statistics for given name
+	 */
+	public static boolean remove(String name) {
+		ExecStats execStats = stats.remove(name);
+		if (execStats == null) {
+			return false;
+		}
+		evicted(execStats);
+		evictions.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Atomically get or create ExecStats for signature
+	 *
+	 * @return null when registry is full
+	 */
+	static ExecStats getOrCreate(Signature signature) {
+		String name = getName(signature);
+		ExecStats execStats = stats.get(name);
+		if (execStats == null) {
+			int max = maxStats;
+			if (max > 0 && stats.size() >= max) {
+				rejections.incrementAndGet();
+				scheduleEviction(0);
+				return null;
+			}
+			execStats = new ExecStats(name);
+			ExecStats existing = stats.putIfAbsent(name, execStats);
+			if (existing != null) {
+				execStats = existing;
+			} else if (jmxEnabled) {
+				unregistered.add(execStats);
+				scheduleRegistration();
+			}
+		}
+		return execStats;
+	}
+
+	private static void scheduleEviction(long delayMillis) {
+		if (evictionScheduled.compareAndSet(false, true)) {
+			Background.executor().schedule(EVICTION, delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Evicts least recently executed idle statistics down to 7/8 of limit. Runs on background thread only
+	 */
+	private static synchronized void evictIdle() {
+		int max = maxStats;
+		if (max <= 0 || stats.size() < max) {
+			return;
+		}
+		long idleSince = System.currentTimeMillis() - idleMillis;
+		List<ExecStats> candidates = new ArrayList<ExecStats>();
+		for (ExecStats execStats : stats.values()) {
+			if (execStats.getLastUsedMillis() <= idleSince) {
+				candidates.add(execStats);
+			}
+		}
+		Collections.sort(candidates, LEAST_RECENTLY_USED);
+		int count = Math.min(Math.max(1, stats.size() - (max - max / 8)), candidates.size());
+		int evicted = 0;
+		for (int i = 0; i < count; ++i) {
+			ExecStats execStats = candidates.get(i);
+			if (stats.remove(execStats.getName(), execStats)) {
+				evicted(execStats);
+				++evicted;
+			}
+		}
+		//plans of methods without statistics retry when this changes
+		evictions.addAndGet(evicted);
+	}
+
+	/**
+	 * LogPlan holding evicted statistics is rebuilt on next execution, so evicted ExecStats becomes garbage
+	 */
+	private static void evicted(ExecStats execStats) {
+		execStats.evicted = true;
+		if (jmxEnabled) {
+			unregister(execStats);
+		}
+	}
+
+	/**
+	 * @return declaring.Class.method(fully.qualified.ParamType,int[])
+	 */
+	static String getName(Signature signature) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(signature.getDeclaringTypeName());
+		sb.append('.');
+		sb.append(signature.getName());
+		sb.append('(');
+		if (signature instanceof CodeSignature) {
+			Class<?>[] parameterTypes = ((CodeSignature) signature).getParameterTypes();
+			for (int i = 0; i < parameterTypes.length; ++i) {
+				if (i != 0) {
+					sb.append(',');
+				}
+				appendTypeName(sb, parameterTypes[i]);
+			}
+		}
+		sb.append(')');
+		return sb.toString();
+	}
+
+	private static void appendTypeName(StringBuilder sb, Class<?> type) {
+		int dimensions = 0;
+		while (type.isArray()) {
+			type = type.getComponentType();
+			++dimensions;
+		}
+		sb.append(type.getName());
+		for (int i = 0; i < dimensions; ++i) {
+			sb.append("[]");
+		}
+	}
+
+	static ObjectName getObjectName(String name) throws JMException {
+		int idxParams = name.indexOf('(');
+		int idxMethod = name.lastIndexOf('.', idxParams);
+		String className = name.substring(0, idxMethod);
+		String method = name.substring(idxMethod + 1);
+		return new ObjectName(JMX_DOMAIN + ":type=ExecStats,class=" + className + ",method=" + ObjectName.quote(method));
+	}
+
+	private static void scheduleRegistration() {
+		if (registrationScheduled.compareAndSet(false, true)) {
+			Background.executor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					registrationScheduled.set(false);
+					ExecStats execStats;
+					while ((execStats = unregistered.poll()) != null) {
+						if (jmxEnabled) {
+							register(execStats);
+						}
+					}
+				}
+			});
+		}
+	}
+
+	private static void register(ExecStats execStats) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = getObjectName(execStats.getName());
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(execStats, objectName);
+			}
+		} catch (InstanceAlreadyExistsException iaex) {
+			//registered concurrently by setJmxEnabled and background thread
+		} catch (JMException jmx) {
+			log.warn("Failed to register MBean for " + execStats.getName(), jmx);
+		}
+	}
+
+	private static void unregister(ExecStats execStats) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = getObjectName(execStats.getName());
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException jmx) {
+			log.warn("Failed to unregister MBean for " + execStats.getName(), jmx);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package net.anthavio.aspect;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically logs summary of {@link ExecStats} collected since previous report - throughput and latency of every
+ * @Logged(statistics = true) method for that interval only.
+ *
+ * signature                       calls/s  errors/s    mean ms     p99 ms     max ms
+ * example.Example.myMethod(String)  125.3       0.1      1.212      8.388     12.058
+ *
+ * Recording threads are never stopped or slowed down. Reporter takes lock-free snapshots of cumulative counters and
+ * histograms and subtracts snapshot taken for previous report. Maximum is highest histogram bucket value (at most 6.25% higher).
+ * Methods without executions in the interval are not reported.
+ *
+ * Report is logged on INFO level of net.anthavio.aspect.StatsReporter logger from shared background thread.
+ * Start it using {@link #start(long, TimeUnit)} or system property (interval in seconds)
+ * java -DLogAspect.report=60 com.something.MainClass
+ *
+ * @author vanek
+ *
+ */
+public final class StatsReporter {
+
+	private static final Logger log = LoggerFactory.getLogger(StatsReporter.class);
+
+	private static Map<String, ExecStats.Snapshot> previous = new HashMap<String, ExecStats.Snapshot>();
+
+	private static long previousNanos = System.nanoTime();
+
+	private static ScheduledFuture<?> scheduled;
+
+	private StatsReporter() {
+	}
+
+	/**
+	 * Starts reporting when -DLogAspect.report is set. Called once {@link StatsRegistry} is initialized
+	 */
+	static void configure() {
+		String seconds = System.getProperty("LogAspect.report");
+		if (seconds != null) {
+			try {
+				start(Long.parseLong(seconds), TimeUnit.SECONDS);
+			} catch (IllegalArgumentException iax) {
+				log.warn("Invalid LogAspect.report interval " + seconds);
+			}
+		}
+	}
+
+	/**
+	 * Starts periodic reporting, replacing previously started one
+	 */
+	public static synchronized void start(long interval, TimeUnit unit) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("Interval must be positive " + interval);
+		}
+		stop();
+		collect(); //first report covers only its own interval
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					report();
+				} catch (RuntimeException rx) {
+					log.warn("Statistics report failed", rx);
+				}
+			}
+		};
+		scheduled = Background.executor().scheduleAtFixedRate(task, interval, interval, unit);
+	}
+
+	public static synchronized void stop() {
+		if (scheduled != null) {
+			scheduled.cancel(false);
+			scheduled = null;
+		}
+	}
+
+	public static synchronized boolean isRunning() {
+		return scheduled != null;
+	}
+
+	/**
+	 * Logs report of interval since previous report immediately
+	 */
+	public static void report() {
+		if (log.isInfoEnabled()) {
+			List<Interval> intervals = collect();
+			if (!intervals.isEmpty()) {
+				log.info(format(intervals));
+			}
+		} else {
+			collect();
+		}
+	}
+
+	/**
+	 * Closes current interval and starts new one
+	 *
+	 * @return statistics of methods executed since previous call
+	 */
+	public static synchronized List<Interval> collect() {
+		long nanos = System.nanoTime();
+		Map<String, ExecStats.Snapshot> current = StatsRegistry.snapshot();
+		List<Interval> intervals = new ArrayList<Interval>();
+		for (ExecStats.Snapshot snapshot : current.values()) {
+			Interval interval = new Interval(snapshot, previous.get(snapshot.getName()), nanos - previousNanos);
+			if (interval.calls != 0) {
+				intervals.add(interval);
+			}
+		}
+		previous = current;
+		previousNanos = nanos;
+		return intervals;
+	}
+
+	/**
+	 * @return report table
+	 */
+	static String format(List<Interval> intervals) {
+		int width = "signature".length();
+		for (Interval interval : intervals) {
+			width = Math.max(width, interval.name.length());
+		}
+		String row = "%n%-" + width + "s %9.1f %9.1f %10.3f %10.3f %10.3f";
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ENGLISH, "Statistics for last %.1f s", intervals.get(0).nanos / 1000000000.0));
+		sb.append(String.format(Locale.ENGLISH, "%n%-" + width + "s %9s %9s %10s %10s %10s", "signature", "calls/s",
+				"errors/s", "mean ms", "p99 ms", "max ms"));
+		for (Interval interval : intervals) {
+			sb.append(String.format(Locale.ENGLISH, row, interval.name, interval.getCallsPerSecond(),
+					interval.getErrorsPerSecond(), interval.meanNanos / 1000000.0, interval.p99Nanos / 1000000.0,
+					interval.maxNanos / 1000000.0));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Statistics of single method for one reporting interval
+	 */
+	public static class Interval {
+
+		private final String name;
+
+		private final long nanos;
+
+		private final long calls;
+
+		private final long errors;
+
+		private final long meanNanos;
+
+		private final long p99Nanos;
+
+		private final long maxNanos;
+
+		/**
+		 * @param previous null when method was not executed before interval started
+		 */
+		Interval(ExecStats.Snapshot current, ExecStats.Snapshot previous, long nanos) {
+			this.name = current.getName();
+			this.nanos = nanos;
+			LatencyHistogram.Snapshot histogram = current.getHistogram().merge(current.getExceptionHistogram());
+			if (previous == null || previous.getExecutions() > current.getExecutions()) {
+				//new or reset in between
+				this.calls = current.getExecutions();
+				this.errors = current.getExceptions();
+				this.meanNanos = current.getAverageNanos();
+			} else {
+				this.calls = current.getExecutions() - previous.getExecutions();
+				this.errors = current.getExceptions() - previous.getExceptions();
+				this.meanNanos = calls != 0 ? (current.getTotalNanos() - previous.getTotalNanos()) / calls : 0;
+				histogram = histogram.minus(previous.getHistogram().merge(previous.getExceptionHistogram()));
+			}
+			this.p99Nanos = histogram.getValueAtPercentile(99);
+			this.maxNanos = histogram.getMax();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return length of interval in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		public long getCalls() {
+			return calls;
+		}
+
+		/**
+		 * @return executions ended by exception. Included in calls too
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		public double getCallsPerSecond() {
+			return nanos != 0 ? calls * 1000000000.0 / nanos : 0;
+		}
+
+		public double getErrorsPerSecond() {
+			return nanos != 0 ? errors * 1000000000.0 / nanos : 0;
+		}
+
+		public long getMeanNanos() {
+			return meanNanos;
+		}
+
+		public long getP99Nanos() {
+			return p99Nanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		@Override
+		public String toString() {
+			return name + " calls=" + calls + ", errors=" + errors + ", meanNanos=" + meanNanos + ", p99Nanos=" + p99Nanos
+					+ ", maxNanos=" + maxNanos;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package net.anthavio.aspect;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Group of long counters striped across cache lines in spirit of java.util.concurrent.atomic.LongAdder (Java 8).
+ *
+ * Every stripe holds all counters of the group in one cache line, so single add touches only one cache line and
+ * threads mapped to different stripes never contend. Stripe is picked by hash of the thread id.
+ * Sums are exact once writers are quiescent.
+ *
+ * Memory footprint is stripes * 64 bytes. Stripes count is 2 * available processors (power of two, 4 min, 64 max)
+ *
+ * @author vanek
+ *
+ */
+final class StripedCounters implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * 8 longs = 64 bytes = common cache line size
+	 */
+	private static final int LINE = 8;
+
+	static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+	private static final int SHIFT = 32 - Integer.numberOfTrailingZeros(STRIPES);
+
+	private final int stride;
+
+	private final AtomicLongArray cells;
+
+	/**
+	 * @param counters number of counters in group
+	 */
+	StripedCounters(int counters) {
+		this.stride = ((counters + LINE - 1) / LINE) * LINE;
+		//extra line in front to keep first stripe away from array header
+		this.cells = new AtomicLongArray(LINE + STRIPES * stride);
+	}
+
+	void add(int counter, long value) {
+		cells.getAndAdd(base() + counter, value);
+	}
+
+	/**
+	 * Adds value into two counters of the same stripe
+	 */
+	void add(int counter1, long value1, int counter2, long value2) {
+		int base = base();
+		cells.getAndAdd(base + counter1, value1);
+		cells.getAndAdd(base + counter2, value2);
+	}
+
+	long sum(int counter) {
+		long sum = 0;
+		for (int i = LINE + counter; i < cells.length(); i += stride) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+
+	void reset() {
+		for (int i = 0; i < cells.length(); ++i) {
+			cells.set(i, 0);
+		}
+	}
+
+	private int base() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9; //Fibonacci hashing spreads sequential thread ids
+		return LINE + (hash >>> SHIFT) * stride;
+	}
+
+	private static int stripes(int processors) {
+		int stripes = 4;
+		while (stripes < processors * 2 && stripes < 64) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+}
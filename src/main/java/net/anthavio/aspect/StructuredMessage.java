@@ -0,0 +1,314 @@
+package net.anthavio.aspect;
+
+import net.anthavio.aspect.Logged.Format;
+
+/**
+ * Machine readable messages for {@link Format#KEY_VALUE} and {@link Format#JSON}. Same content as text messages but every piece
+ * has its own field, so log pipeline does not need to parse them with regular expressions.
+ *
+ * KEY_VALUE: phase=exit class=example.Example method=myMethod result="something works" duration=1 unit=ms
+ * JSON: {"phase":"exit","class":"example.Example","method":"myMethod","result":"something works","duration":1,"unit":"ms"}
+ *
+ * Arguments are arg0, arg1,... in KEY_VALUE and "args" array in JSON. Values are rendered directly into reusable
+ * {@link MessageBuffer} and escaped in place only when they contain characters that need it.
+ *
+ * @author vanek
+ *
+ */
+final class StructuredMessage {
+
+	static final String ENTER = "enter";
+
+	static final String EXIT = "exit";
+
+	static final String SLOW = "slow";
+
+	static final String ERROR = "error";
+
+	static final String REPEATED = "repeated";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private StructuredMessage() {
+	}
+
+	static String enter(final LogPlan plan, final Object[] args, boolean logValues) {
+		final StringBuilder sb = MessageBuffer.acquire();
+		try {
+			boolean json = begin(plan, ENTER, sb);
+			args(plan, args, logValues, json, sb);
+			return end(json, sb);
+		} finally {
+			MessageBuffer.release(sb);
+		}
+	}
+
+	static String exit(final LogPlan plan, boolean logValue, final long execNanos, final Object retVal) {
+		final StringBuilder sb = MessageBuffer.acquire();
+		try {
+			boolean json = begin(plan, EXIT, sb);
+			result(plan, logValue, retVal, json, sb);
+			if (plan.logTime) {
+				duration(plan, execNanos, json, sb);
+			}
+			stats(plan, json, sb);
+			return end(json, sb);
+		} finally {
+			MessageBuffer.release(sb);
+		}
+	}
+
+	static String slow(final LogPlan plan, final Object[] args, boolean logValues, final long execNanos,
+			final Object retVal) {
+		final StringBuilder sb = MessageBuffer.acquire();
+		try {
+			boolean json = begin(plan, SLOW, sb);
+			args(plan, args, logValues, json, sb);
+			result(plan, logValues, retVal, json, sb);
+			duration(plan, execNanos, json, sb);
+			stats(plan, json, sb);
+			return end(json, sb);
+		} finally {
+			MessageBuffer.release(sb);
+		}
+	}
+
+	static String error(final LogPlan plan, final long execNanos, final Throwable x) {
+		final StringBuilder sb = MessageBuffer.acquire();
+		try {
+			boolean json = begin(plan, ERROR, sb);
+			key("exception", json, sb);
+			string(x.getClass().getName(), json, sb);
+			if (x.getMessage() != null) {
+				key("message", json, sb);
+				string(x.getMessage(), json, sb);
+			}
+			if (plan.logTime) {
+				duration(plan, execNanos, json, sb);
+			}
+			stats(plan, json, sb);
+			return end(json, sb);
+		} finally {
+			MessageBuffer.release(sb);
+		}
+	}
+
+	static String repeated(final String className, final String method, final Format format, final String exception,
+			final long count) {
+		final StringBuilder sb = MessageBuffer.acquire();
+		try {
+			boolean json = begin(format, className, method, REPEATED, sb);
+			key("exception", json, sb);
+			string(exception, json, sb);
+			key("count", json, sb);
+			sb.append(count);
+			return end(json, sb);
+		} finally {
+			MessageBuffer.release(sb);
+		}
+	}
+
+	private static boolean begin(LogPlan plan, String phase, StringBuilder sb) {
+		return begin(plan.format, plan.className, plan.name, phase, sb);
+	}
+
+	private static boolean begin(Format format, String className, String method, String phase, StringBuilder sb) {
+		boolean json = format == Format.JSON;
+		if (json) {
+			sb.append('{');
+		}
+		key("phase", json, sb);
+		string(phase, json, sb);
+		key("class", json, sb);
+		string(className, json, sb);
+		key("method", json, sb);
+		string(method, json, sb);
+		return json;
+	}
+
+	private static String end(boolean json, StringBuilder sb) {
+		if (json) {
+			sb.append('}');
+		}
+		return sb.toString();
+	}
+
+	private static void args(LogPlan plan, Object[] args, boolean logValues, boolean json, StringBuilder sb) {
+		if (json) {
+			key("args", json, sb);
+			sb.append('[');
+		}
+		for (int i = 0; i < args.length; ++i) {
+			if (json) {
+				if (i != 0) {
+					sb.append(',');
+				}
+			} else {
+				sb.append(" arg").append(i).append('=');
+			}
+			value(plan, args[i], logValues && args[i] != null && plan.isParamValue(i, args[i]), json, sb);
+		}
+		if (json) {
+			sb.append(']');
+		}
+	}
+
+	private static void result(LogPlan plan, boolean logValue, Object retVal, boolean json, StringBuilder sb) {
+		if (retVal == null && !plan.isVoid) {
+			key("result", json, sb);
+			sb.append("null");
+		} else if (plan.logRetVal) {
+			key("result", json, sb);
+			value(plan, retVal, logValue && plan.isRetValValue(retVal), json, sb);
+		}
+	}
+
+	private static void duration(LogPlan plan, long execNanos, boolean json, StringBuilder sb) {
+		key("duration", json, sb);
+		sb.append(plan.toTimeUnit(execNanos));
+		key("unit", json, sb);
+		string(plan.timeUnitSuffix, json, sb);
+	}
+
+	/**
+	 * Counts only. Percentiles are too expensive to compute for every message
+	 */
+	private static void stats(LogPlan plan, boolean json, StringBuilder sb) {
+		if (plan.stats != null) {
+			key("executions", json, sb);
+			sb.append(plan.stats.getExecutions());
+			key("exceptions", json, sb);
+			sb.append(plan.stats.getExceptions());
+		}
+	}
+
+	/**
+	 * @param asValue false for type only
+	 */
+	private static void value(LogPlan plan, Object value, boolean asValue, boolean json, StringBuilder sb) {
+		if (value == null) {
+			sb.append("null");
+		} else if (!asValue) {
+			string(ValueRenderers.type(value.getClass()).simpleName, json, sb);
+		} else if (json && isNumber(value)) {
+			sb.append(((Number) value).longValue()); //numeric JSON field
+		} else {
+			int start = sb.length();
+			if (json) {
+				sb.append('"');
+				LogAspect.buildValue(value, sb, plan.maxLength, plan.preview);
+				escapeJson(sb, start + 1);
+				sb.append('"');
+			} else {
+				LogAspect.buildValue(value, sb, plan.maxLength, plan.preview);
+				escapeKeyValue(sb, start);
+			}
+		}
+	}
+
+	private static void key(String key, boolean json, StringBuilder sb) {
+		if (json) {
+			if (sb.charAt(sb.length() - 1) != '{') {
+				sb.append(',');
+			}
+			sb.append('"').append(key).append("\":");
+		} else {
+			if (sb.length() != 0) {
+				sb.append(' ');
+			}
+			sb.append(key).append('=');
+		}
+	}
+
+	private static void string(String value, boolean json, StringBuilder sb) {
+		int start = sb.length();
+		if (json) {
+			sb.append('"');
+			sb.append(value);
+			escapeJson(sb, start + 1);
+			sb.append('"');
+		} else {
+			sb.append(value);
+			escapeKeyValue(sb, start);
+		}
+	}
+
+	private static boolean isNumber(Object value) {
+		Class<?> clazz = value.getClass();
+		return clazz == Integer.class || clazz == Long.class || clazz == Short.class || clazz == Byte.class;
+	}
+
+	/**
+	 * Escapes characters appended from start position. Copies only when there is something to escape
+	 */
+	private static void escapeJson(StringBuilder sb, int start) {
+		int i = start;
+		while (i < sb.length() && !needsJsonEscape(sb.charAt(i))) {
+			++i;
+		}
+		if (i == sb.length()) {
+			return;
+		}
+		String tail = sb.substring(i);
+		sb.setLength(i);
+		for (int j = 0; j < tail.length(); ++j) {
+			char c = tail.charAt(j);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Value with space, quote or = is quoted. Quotes, backslashes and line breaks are escaped
+	 */
+	private static void escapeKeyValue(StringBuilder sb, int start) {
+		boolean quote = sb.length() == start;
+		for (int i = start; i < sb.length() && !quote; ++i) {
+			char c = sb.charAt(i);
+			quote = c <= ' ' || c == '"' || c == '=' || c == '\\';
+		}
+		if (quote) {
+			String value = sb.substring(start);
+			sb.setLength(start);
+			sb.append('"');
+			for (int j = 0; j < value.length(); ++j) {
+				char c = value.charAt(j);
+				if (c == '"' || c == '\\') {
+					sb.append('\\').append(c);
+				} else if (c == '\n') {
+					sb.append("\\n");
+				} else if (c == '\r') {
+					sb.append("\\r");
+				} else {
+					sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+	}
+
+	private static boolean needsJsonEscape(char c) {
+		return c < 0x20 || c == '"' || c == '\\';
+	}
+}
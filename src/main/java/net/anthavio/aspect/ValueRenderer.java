@@ -0,0 +1,23 @@
+package net.anthavio.aspect;
+
+/**
+ * Custom rendering of parameter and return values logged by {@link LogAspect}. Register it using {@link ValueRenderers#register(Class, ValueRenderer)}
+ *
+ * Useful for big objects (XML documents, DTO graphs) where toString() is expensive or does not say much.
+ *
+ * Must be thread safe.
+ *
+ * @author vanek
+ *
+ */
+public interface ValueRenderer<T> {
+
+	/**
+	 * Appends textual representation of value. Implementation should stop once maxLength characters are appended,
+	 * anything above maxLength is cut off by LogAspect anyway.
+	 *
+	 * @param value never null
+	 * @param maxLength {@link Logged#maxLength()} or what remains from it when rendering Collection element
+	 */
+	void render(T value, StringBuilder sb, int maxLength);
+}
@@ -0,0 +1,479 @@
+package net.anthavio.aspect;
+
+import java.lang.annotation.Annotation;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.anthavio.HibernateHelper;
+
+/**
+ * Registry of {@link ValueRenderer}s used by {@link LogAspect} to render parameter and return values.
+ *
+ * Renderer is resolved once per runtime class of value and cached. Registered renderer for the class itself, then
+ * for superclasses, then for interfaces is used. Without registered one, built-in rendering is
+ * <ul>
+ * <li>CharSequence - only first maxLength characters are copied</li>
+ * <li>Collection, Map - type and size ArrayList[5], with {@link Logged#preview()} also first elements ArrayList[5]{a,b,c,...}</li>
+ * <li>array - component type and length String[5], with preview also first elements</li>
+ * <li>entity (class annotated with @Entity) - fields Order{id=1,status=NEW,customer=Customer{id=5,name=John}}, see below</li>
+ * <li>anything else - toString()</li>
+ * </ul>
+ * String and boxed integral numbers are always rendered directly and cannot be overridden.
+ * size() is not called on collections where it is not constant time (ConcurrentLinkedQueue,...), [?] is printed instead.
+ *
+ * Entity toString() is never called, because it can touch lazy association and fire SQL. Entity is rendered from its
+ * non static, non transient fields read through per class field list. Uninitialized Hibernate proxy is rendered as
+ * &lt;id:5&gt; and uninitialized collection as &lt;lazy&gt; without touching them. Initialized collections are rendered
+ * as type and size only. Nested entities are rendered up to depth {@value EntityRenderer#MAX_DEPTH}, deeper as Customer{...}
+ * Entity is recognized by annotation named Entity (javax.persistence, jakarta.persistence) on class or superclass.
+ *
+ * @author vanek
+ *
+ */
+public final class ValueRenderers {
+
+	/**
+	 * size() traverses whole collection
+	 */
+	private static final Set<String> UNSIZED = new HashSet<String>(Arrays.asList(
+			"java.util.concurrent.ConcurrentLinkedQueue", "java.util.concurrent.ConcurrentLinkedDeque",
+			"java.util.concurrent.LinkedTransferQueue", "java.util.concurrent.ConcurrentSkipListSet",
+			"java.util.concurrent.ConcurrentSkipListMap"));
+
+	private static final String CONTINUE = "...";
+
+	private static final ConcurrentMap<Class<?>, ValueRenderer<?>> registered = new ConcurrentHashMap<Class<?>, ValueRenderer<?>>();
+
+	private static final WeakClassCache<ValueType> types = new WeakClassCache<ValueType>();
+
+	private ValueRenderers() {
+	}
+
+	/**
+	 * Registers renderer for values of type (including subtypes) replacing previously registered one
+	 */
+	public static <T> void register(Class<T> type, ValueRenderer<? super T> renderer) {
+		if (type == null) {
+			throw new IllegalArgumentException("Null type");
+		}
+		if (renderer == null) {
+			throw new IllegalArgumentException("Null renderer");
+		}
+		synchronized (types) {
+			registered.put(type, renderer);
+			types.clear();
+		}
+	}
+
+	/**
+	 * @return true if renderer for type was registered
+	 */
+	public static boolean unregister(Class<?> type) {
+		synchronized (types) {
+			types.clear();
+			return registered.remove(type) != null;
+		}
+	}
+
+	/**
+	 * @return cached rendering information for class
+	 */
+	static ValueType type(Class<?> clazz) {
+		ValueType type = types.get(clazz);
+		if (type == null) {
+			synchronized (types) {
+				type = new ValueType(clazz, resolve(clazz));
+				types.put(clazz, type);
+			}
+		}
+		return type;
+	}
+
+	private static Renderer resolve(Class<?> clazz) {
+		ValueRenderer<?> custom = findRegistered(clazz);
+		if (custom != null) {
+			return new Custom(custom);
+		} else if (isEntity(clazz)) {
+			return new EntityRenderer();
+		} else if (CharSequence.class.isAssignableFrom(clazz)) {
+			return CHARS;
+		} else if (Collection.class.isAssignableFrom(clazz)) {
+			return isUnsized(clazz) ? UNSIZED_COLLECTION : COLLECTION;
+		} else if (Map.class.isAssignableFrom(clazz)) {
+			return isUnsized(clazz) ? UNSIZED_MAP : MAP;
+		} else if (clazz.isArray()) {
+			return ARRAY;
+		} else {
+			return TO_STRING;
+		}
+	}
+
+	private static ValueRenderer<?> findRegistered(Class<?> clazz) {
+		if (registered.isEmpty()) {
+			return null;
+		}
+		List<Class<?>> interfaces = new ArrayList<Class<?>>();
+		for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+			ValueRenderer<?> renderer = registered.get(c);
+			if (renderer != null) {
+				return renderer;
+			}
+			interfaces.addAll(Arrays.asList(c.getInterfaces()));
+		}
+		//breadth first through interfaces and their superinterfaces
+		for (int i = 0; i < interfaces.size(); ++i) {
+			ValueRenderer<?> renderer = registered.get(interfaces.get(i));
+			if (renderer != null) {
+				return renderer;
+			}
+			interfaces.addAll(Arrays.asList(interfaces.get(i).getInterfaces()));
+		}
+		return null;
+	}
+
+	/**
+	 * By annotation name to avoid persistence API dependency and its javax/jakarta versions. Hibernate proxy is
+	 * subclass of entity class
+	 */
+	private static boolean isEntity(Class<?> clazz) {
+		for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+			if (isAnnotated(c.getDeclaredAnnotations(), "Entity")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isAnnotated(Annotation[] annotations, String simpleName) {
+		for (Annotation annotation : annotations) {
+			if (annotation.annotationType().getSimpleName().equals(simpleName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isUnsized(Class<?> clazz) {
+		for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+			if (UNSIZED.contains(c.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Appends elements while there is remaining budget. Value rendering started on position start
+	 */
+	private static void buildElements(Iterator<?> iterator, StringBuilder sb, int start, int max, int preview) {
+		sb.append('{');
+		try {
+			for (int i = 0; iterator.hasNext(); ++i) {
+				if (i != 0) {
+					sb.append(',');
+				}
+				int remaining = max - (sb.length() - start);
+				if (i == preview || remaining <= 0) {
+					sb.append(CONTINUE);
+					break;
+				}
+				Object element = iterator.next();
+				if (element instanceof Map.Entry<?, ?>) {
+					Map.Entry<?, ?> entry = (Map.Entry<?, ?>) element;
+					LogAspect.buildValue(entry.getKey(), sb, remaining, 0);
+					sb.append('=');
+					LogAspect.buildValue(entry.getValue(), sb, Math.max(0, max - (sb.length() - start)), 0);
+				} else {
+					LogAspect.buildValue(element, sb, remaining, 0);
+				}
+			}
+		} catch (ConcurrentModificationException cmx) {
+			sb.append(CONTINUE); //modified by other thread
+		}
+		sb.append('}');
+	}
+
+	/**
+	 * Cached per class information
+	 */
+	static final class ValueType {
+
+		/**
+		 * Class.getSimpleName() computes it on every call (up to Java 11)
+		 */
+		final String simpleName;
+
+		/**
+		 * For arrays simpleName without trailing []
+		 */
+		final String renderName;
+
+		final Renderer renderer;
+
+		/**
+		 * Hibernate proxy or lazy collection needs to be checked before rendering
+		 */
+		final HibernateHelper.Kind hibernate;
+
+		ValueType(Class<?> clazz, Renderer renderer) {
+			this.simpleName = clazz.getSimpleName();
+			this.renderName = clazz.isArray() ? simpleName.substring(0, simpleName.length() - 2) : simpleName;
+			this.renderer = renderer;
+			this.hibernate = HibernateHelper.classify(clazz);
+		}
+	}
+
+	abstract static class Renderer {
+
+		abstract void render(ValueType type, Object value, StringBuilder sb, int max, int preview);
+	}
+
+	/**
+	 * Registered ValueRenderer with output cut to max length
+	 */
+	private static final class Custom extends Renderer {
+
+		private final ValueRenderer<Object> renderer;
+
+		@SuppressWarnings("unchecked")
+		Custom(ValueRenderer<?> renderer) {
+			this.renderer = (ValueRenderer<Object>) renderer;
+		}
+
+		@Override
+		void render(ValueType type, Object value, StringBuilder sb, int max, int preview) {
+			int start = sb.length();
+			renderer.render(value, sb, max);
+			int length = sb.length() - start;
+			if (length > max) {
+				sb.setLength(start + max);
+				sb.append(CONTINUE);
+				sb.append(length);
+			}
+		}
+	}
+
+	private static final Renderer CHARS = new Renderer() {
+
+		@Override
+		void render(ValueType type, Object value, StringBuilder sb, int max, int preview) {
+			LogAspect.buildString((CharSequence) value, sb, max);
+		}
+	};
+
+	private static final Renderer TO_STRING = new Renderer() {
+
+		@Override
+		void render(ValueType type, Object value, StringBuilder sb, int max, int preview) {
+			LogAspect.buildString(String.valueOf(value), sb, max);
+		}
+	};
+
+	private static final Renderer COLLECTION = new CollectionRenderer(true);
+
+	private static final Renderer UNSIZED_COLLECTION = new CollectionRenderer(false);
+
+	private static final Renderer MAP = new MapRenderer(true);
+
+	private static final Renderer UNSIZED_MAP = new MapRenderer(false);
+
+	private static final Renderer ARRAY = new Renderer() {
+
+		@Override
+		void render(ValueType type, Object value, StringBuilder sb, int max, int preview) {
+			int start = sb.length();
+			int length = Array.getLength(value);
+			sb.append(type.renderName);
+			sb.append('[').append(length).append(']');
+			if (preview > 0) {
+				sb.append('{');
+				for (int i = 0; i < length; ++i) {
+					if (i != 0) {
+						sb.append(',');
+					}
+					int remaining = max - (sb.length() - start);
+					if (i == preview || remaining <= 0) {
+						sb.append(CONTINUE);
+						break;
+					}
+					LogAspect.buildValue(Array.get(value, i), sb, remaining, 0);
+				}
+				sb.append('}');
+			}
+		}
+	};
+
+	/**
+	 * Renders entity fields without calling toString() and without touching lazy associations
+	 */
+	static final class EntityRenderer extends Renderer {
+
+		static final int MAX_DEPTH = 2;
+
+		/**
+		 * Fields reference their declaring class. Soft reference does not keep class cached in WeakClassCache reachable
+		 */
+		private volatile SoftReference<Field[]> fields = new SoftReference<Field[]>(null);
+
+		@Override
+		void render(ValueType type, Object value, StringBuilder sb, int max, int preview) {
+			renderEntity(type, value, sb, max, 0);
+		}
+
+		private void renderEntity(ValueType type, Object value, StringBuilder sb, int max, int depth) {
+			if (type.hibernate == HibernateHelper.Kind.PROXY) {
+				//initialized (LogAspect renders uninitialized one as <id:..>), proxy itself has no entity fields
+				Object implementation = HibernateHelper.getImplementation(value);
+				ValueType implType = type(implementation.getClass());
+				if (implementation != value && implType.renderer instanceof EntityRenderer) {
+					((EntityRenderer) implType.renderer).renderEntity(implType, implementation, sb, max, depth);
+				} else {
+					sb.append(type.simpleName);
+				}
+				return;
+			}
+			int start = sb.length();
+			sb.append(type.simpleName);
+			sb.append('{');
+			if (depth >= MAX_DEPTH) {
+				sb.append(CONTINUE);
+			} else {
+				Field[] fields = fields(value.getClass());
+				for (int i = 0; i < fields.length; ++i) {
+					if (i != 0) {
+						sb.append(',');
+					}
+					if (max - (sb.length() - start) <= 0) {
+						sb.append(CONTINUE);
+						break;
+					}
+					sb.append(fields[i].getName()).append('=');
+					try {
+						renderField(fields[i].get(value), sb, Math.max(0, max - (sb.length() - start)), depth);
+					} catch (IllegalAccessException iax) {
+						sb.append(HibernateHelper.UNACCESSIBLE_VALUE);
+					}
+				}
+			}
+			sb.append('}');
+		}
+
+		private void renderField(Object value, StringBuilder sb, int max, int depth) {
+			if (value != null) {
+				ValueType type = type(value.getClass());
+				if (type.renderer instanceof EntityRenderer) {
+					Object unwrapped = HibernateHelper.getHibernateProxiedValue(value, type.hibernate);
+					if (unwrapped != value) {
+						LogAspect.buildString((String) unwrapped, sb, max); //uninitialized
+					} else {
+						((EntityRenderer) type.renderer).renderEntity(type, value, sb, max, depth + 1);
+					}
+					return;
+				}
+			}
+			//collections without preview - elements could be entities with lazy associations too
+			LogAspect.buildValue(value, sb, max, 0);
+		}
+
+		private Field[] fields(Class<?> clazz) {
+			Field[] fields = this.fields.get();
+			if (fields == null) {
+				fields = resolveFields(clazz);
+				this.fields = new SoftReference<Field[]>(fields);
+			}
+			return fields;
+		}
+
+		/**
+		 * Superclass fields (usually id) first
+		 */
+		private static Field[] resolveFields(Class<?> clazz) {
+			List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+			for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+				hierarchy.add(0, c);
+			}
+			List<Field> fields = new ArrayList<Field>();
+			for (Class<?> c : hierarchy) {
+				for (Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+							|| field.getName().startsWith("$$_") || isAnnotated(field.getDeclaredAnnotations(), "Transient")) {
+						continue; //not persistent or bytecode enhancement
+					}
+					try {
+						field.setAccessible(true);
+						fields.add(field);
+					} catch (SecurityException sx) {
+						//skip it
+					}
+				}
+			}
+			return fields.toArray(new Field[fields.size()]);
+		}
+	}
+
+	private static final class CollectionRenderer extends Renderer {
+
+		private final boolean sized;
+
+		CollectionRenderer(boolean sized) {
+			this.sized = sized;
+		}
+
+		@Override
+		void render(ValueType type, Object value, StringBuilder sb, int max, int preview) {
+			int start = sb.length();
+			Collection<?> collection = (Collection<?>) value;
+			sb.append(type.renderName);
+			sb.append('[');
+			if (sized) {
+				sb.append(collection.size());
+			} else {
+				sb.append('?');
+			}
+			sb.append(']');
+			if (preview > 0) {
+				buildElements(collection.iterator(), sb, start, max, preview);
+			}
+		}
+	}
+
+	private static final class MapRenderer extends Renderer {
+
+		private final boolean sized;
+
+		MapRenderer(boolean sized) {
+			this.sized = sized;
+		}
+
+		@Override
+		void render(ValueType type, Object value, StringBuilder sb, int max, int preview) {
+			int start = sb.length();
+			Map<?, ?> map = (Map<?, ?>) value;
+			sb.append(type.renderName);
+			sb.append('[');
+			if (sized) {
+				sb.append(map.size());
+			} else {
+				sb.append('?');
+			}
+			sb.append(']');
+			if (preview > 0) {
+				buildElements(map.entrySet().iterator(), sb, start, max, preview);
+			}
+		}
+	}
+}
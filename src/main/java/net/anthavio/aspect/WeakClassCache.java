@@ -0,0 +1,124 @@
+package net.anthavio.aspect;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Class keyed cache in spirit of java.lang.ClassValue (Java 7) that does not keep classes (and their ClassLoaders) reachable.
+ *
+ * Lookups are lock-free and allocation-free - linear probing identity table of weak references that is replaced
+ * (copy-on-write) on every insert. Inserts are expected to be rare (once per class), so they are synchronized and
+ * entries of garbage collected classes are purged while copying.
+ *
+ * Value must not strongly reference its key class, otherwise the class is never collected.
+ *
+ * @author vanek
+ *
+ */
+final class WeakClassCache<V> {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private volatile Entry<V>[] table = newTable(INITIAL_CAPACITY);
+
+	/**
+	 * @return cached value or null
+	 */
+	V get(Class<?> clazz) {
+		Entry<V>[] table = this.table;
+		int mask = table.length - 1;
+		for (int i = hash(clazz) & mask;; i = (i + 1) & mask) {
+			Entry<V> entry = table[i];
+			if (entry == null) {
+				return null;
+			} else if (entry.get() == clazz) {
+				return entry.value;
+			}
+		}
+	}
+
+	/**
+	 * Stores value replacing previous one
+	 */
+	synchronized void put(Class<?> clazz, V value) {
+		Entry<V>[] current = this.table;
+		int live = 1;
+		for (Entry<V> entry : current) {
+			if (entry != null && entry.get() != null && entry.get() != clazz) {
+				++live;
+			}
+		}
+		//load factor 0.5 keeps probe sequences short
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < live * 2) {
+			capacity <<= 1;
+		}
+		Entry<V>[] copy = newTable(capacity);
+		for (Entry<V> entry : current) {
+			if (entry != null) {
+				Class<?> key = entry.get();
+				if (key != null && key != clazz) {
+					insert(copy, key, entry.value);
+				}
+			}
+		}
+		insert(copy, clazz, value);
+		this.table = copy;
+	}
+
+	/**
+	 * @return already cached value or null when value was stored
+	 */
+	synchronized V putIfAbsent(Class<?> clazz, V value) {
+		V existing = get(clazz);
+		if (existing == null) {
+			put(clazz, value);
+		}
+		return existing;
+	}
+
+	synchronized void clear() {
+		this.table = newTable(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @return number of entries including those of already collected classes
+	 */
+	int size() {
+		int size = 0;
+		for (Entry<V> entry : table) {
+			if (entry != null) {
+				++size;
+			}
+		}
+		return size;
+	}
+
+	private static <V> void insert(Entry<V>[] table, Class<?> clazz, V value) {
+		int mask = table.length - 1;
+		int i = hash(clazz) & mask;
+		while (table[i] != null) {
+			i = (i + 1) & mask;
+		}
+		table[i] = new Entry<V>(clazz, value);
+	}
+
+	private static int hash(Class<?> clazz) {
+		int hash = System.identityHashCode(clazz);
+		return hash ^ (hash >>> 16);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> Entry<V>[] newTable(int capacity) {
+		return new Entry[capacity];
+	}
+
+	private static final class Entry<V> extends WeakReference<Class<?>> {
+
+		final V value;
+
+		Entry(Class<?> clazz, V value) {
+			super(clazz);
+			this.value = value;
+		}
+	}
+}
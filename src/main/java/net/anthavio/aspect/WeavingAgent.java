@@ -0,0 +1,183 @@
+package net.anthavio.aspect;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Java agent for load-time weaving of {@link LogAspect} and {@link NullCheckAspect} with fast startup.
+ * Use it instead of -javaagent:aspectjweaver.jar (aspectjweaver must be on classpath)
+ * java -javaagent:anthavio-aspects.jar -cp aspectjweaver.jar:... com.something.MainClass
+ *
+ * Plain AspectJ weaver parses every loaded class before it finds out that nothing matches. This agent passes class to the
+ * weaver only when its bytes mention @Logged, @NullCheck or @Aspect. Everything else (most of the classes of
+ * any application) is skipped without parsing. Agent also
+ * <ul>
+ * <li>adds META-INF/aop-ltw.xml profile (aspects declared, libraries excluded) to AspectJ configuration</li>
+ * <li>enables AspectJ persistent cache of woven classes, so next start reuses them</li>
+ * </ul>
+ *
+ * Agent options (comma separated) -javaagent:anthavio-aspects.jar=cache=/var/tmp/myapp-ajcache,noprefilter
+ * <ul>
+ * <li>cache=dir - cache directory (AspectJ default is java.io.tmpdir/aspectj-cache)</li>
+ * <li>nocache - do not enable the cache</li>
+ * <li>noprefilter - pass every class to the weaver, needed when other aspects from aop.xml match classes without annotations</li>
+ * </ul>
+ * System properties set on the command line win over agent options.
+ *
+ * @author vanek
+ *
+ */
+public final class WeavingAgent {
+
+	static final String CONFIGURATION = "org.aspectj.weaver.loadtime.configuration";
+
+	/**
+	 * AspectJ default configuration with our profile added
+	 */
+	static final String DEFAULT_CONFIGURATION = "META-INF/aop.xml;META-INF/aop-ajc.xml;org/aspectj/aop.xml;META-INF/aop-ltw.xml";
+
+	static final String WEAVER = "org.aspectj.weaver.loadtime.ClassPreProcessorAgentAdapter";
+
+	private static final byte[] PACKAGE = bytes("Lnet/anthavio/aspect/");
+
+	private static final byte[][] ANNOTATIONS = { bytes("Logged;"), bytes("NullCheck;") };
+
+	private static final byte[] ASPECT = bytes("Lorg/aspectj/lang/annotation/Aspect;");
+
+	private WeavingAgent() {
+	}
+
+	public static void premain(String options, Instrumentation instrumentation) {
+		boolean cache = true;
+		boolean prefilter = true;
+		if (options != null) {
+			for (String option : options.split(",")) {
+				option = option.trim();
+				if (option.equals("nocache")) {
+					cache = false;
+				} else if (option.equals("noprefilter")) {
+					prefilter = false;
+				} else if (option.startsWith("cache=")) {
+					setDefault("aj.weaving.cache.dir", option.substring(6));
+				} else if (option.length() != 0) {
+					throw new IllegalArgumentException("Unknown WeavingAgent option " + option);
+				}
+			}
+		}
+		setDefault(CONFIGURATION, DEFAULT_CONFIGURATION);
+		setDefault("aj.weaving.cache.enabled", String.valueOf(cache));
+
+		ClassFileTransformer weaver;
+		try {
+			weaver = (ClassFileTransformer) Class.forName(WEAVER).newInstance();
+		} catch (ClassNotFoundException cnfx) {
+			throw new IllegalStateException("AspectJ weaver not found. Add aspectjweaver.jar on classpath", cnfx);
+		} catch (Exception x) {
+			throw new IllegalStateException("AspectJ weaver initialization failed", x);
+		}
+		instrumentation.addTransformer(prefilter ? new Prefilter(weaver) : weaver);
+	}
+
+	private static void setDefault(String name, String value) {
+		if (System.getProperty(name) == null) {
+			System.setProperty(name, value);
+		}
+	}
+
+	/**
+	 * Scans constant pool bytes for descriptors of our annotations. Class file keeps them as UTF8 constants
+	 * (Lnet/anthavio/aspect/Logged;) no matter where annotation is placed (class, method, constructor, parameter).
+	 * False positive (string constant that looks the same) only costs a full weaver pass.
+	 *
+	 * @return true when class might be matched by LogAspect, NullCheckAspect or is an @Aspect itself
+	 */
+	public static boolean isCandidate(byte[] classfile) {
+		int last = classfile.length - PACKAGE.length;
+		for (int i = 0; i <= last; ++i) {
+			if (classfile[i] == 'L' && matches(classfile, i, PACKAGE)) {
+				int name = i + PACKAGE.length;
+				for (byte[] annotation : ANNOTATIONS) {
+					if (matches(classfile, name, annotation)) {
+						return true;
+					}
+				}
+			}
+		}
+		return indexOf(classfile, ASPECT) != -1;
+	}
+
+	private static boolean matches(byte[] bytes, int offset, byte[] pattern) {
+		if (offset + pattern.length > bytes.length) {
+			return false;
+		}
+		for (int j = 0; j < pattern.length; ++j) {
+			if (bytes[offset + j] != pattern[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] bytes, byte[] pattern) {
+		int last = bytes.length - pattern.length;
+		for (int i = 0; i <= last; ++i) {
+			if (bytes[i] == pattern[0] && matches(bytes, i, pattern)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static byte[] bytes(String ascii) {
+		byte[] bytes = new byte[ascii.length()];
+		for (int i = 0; i < bytes.length; ++i) {
+			bytes[i] = (byte) ascii.charAt(i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Passes only candidate classes to the weaver
+	 */
+	public static class Prefilter implements ClassFileTransformer {
+
+		private static final AtomicLong passed = new AtomicLong();
+
+		private static final AtomicLong skipped = new AtomicLong();
+
+		private final ClassFileTransformer weaver;
+
+		public Prefilter(ClassFileTransformer weaver) {
+			this.weaver = weaver;
+		}
+
+		@Override
+		public byte[] transform(ClassLoader loader, String className, Class<?> redefined, ProtectionDomain domain,
+				byte[] classfile) throws IllegalClassFormatException {
+			//bootstrap classes, lambdas and other anonymous classes are never woven
+			if (loader == null || className == null || !isCandidate(classfile)) {
+				skipped.incrementAndGet();
+				return null;
+			}
+			passed.incrementAndGet();
+			return weaver.transform(loader, className, redefined, domain, classfile);
+		}
+
+		/**
+		 * @return number of classes passed to the weaver by all Prefilters
+		 */
+		public static long getPassed() {
+			return passed.get();
+		}
+
+		/**
+		 * @return number of classes skipped by all Prefilters
+		 */
+		public static long getSkipped() {
+			return skipped.get();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.PrintStream;
+
+import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.ApiPolicyAspect;
+import net.anthavio.aspect.ApiPolicyOverride;
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.NullCheck;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+/**
+ * Bytes allocated per advised call minus bytes allocated by the same unadvised call must stay within budget.
+ * Catches allocation regressions (String concatenation, boxing, varargs copies) sneaking into advices.
+ *
+ * Logging events go into appender that formats and throws them away, so enabled budgets include logback event.
+ *
+ * @author vanek
+ *
+ */
+public class AllocationBudgetTest {
+
+	private static final int WARMUP = 20000;
+
+	private static final int COUNT = 20000;
+
+	/**
+	 * AspectJ around closure and JoinPoint
+	 */
+	private static final long LOG_DISABLED_BUDGET = 160;
+
+	private static final long LOG_TYPES_BUDGET = 512;
+
+	private static final long LOG_VALUES_BUDGET = 512;
+
+	/**
+	 * JoinPoint and copy of arguments
+	 */
+	private static final long NULLCHECK_BUDGET = 96;
+
+	/**
+	 * Nothing, advice uses static part of join point and builds message only when logged
+	 */
+	private static final long APIPOLICY_BUDGET = 16;
+
+	private static LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+	private final String text = "argument1";
+
+	private final Integer number = 5;
+
+	@BeforeClass
+	public static void beforeClass() {
+		HibernateHelper.isHibernatePresent(); //static initializer logs
+		Logger logger = lc.getLogger(AllocationBudgetTest.class);
+		logger.detachAndStopAllAppenders();
+		logger.setAdditive(false);
+		AppenderBase<ILoggingEvent> discarding = new AppenderBase<ILoggingEvent>() {
+
+			@Override
+			protected void append(ILoggingEvent event) {
+				event.getFormattedMessage();
+			}
+		};
+		discarding.setContext(lc);
+		discarding.start();
+		logger.addAppender(discarding);
+	}
+
+	@Before
+	public void before() {
+		Assume.assumeTrue(AllocationMeter.isSupported());
+	}
+
+	@After
+	public void after() {
+		lc.getLogger(ApiPolicyAspect.class).setLevel(null);
+	}
+
+	@Test
+	public void testLogDisabled() {
+		lc.getLogger(AllocationBudgetTest.class).setLevel(Level.OFF);
+		assertBudget("LogAspect disabled", LOG_DISABLED_BUDGET, new Runnable() {
+
+			@Override
+			public void run() {
+				logged(text, number);
+			}
+		});
+	}
+
+	@Test
+	public void testLogTypes() {
+		lc.getLogger(AllocationBudgetTest.class).setLevel(Level.INFO);
+		assertBudget("LogAspect types", LOG_TYPES_BUDGET, new Runnable() {
+
+			@Override
+			public void run() {
+				logged(text, number);
+			}
+		});
+	}
+
+	@Test
+	public void testLogValues() {
+		lc.getLogger(AllocationBudgetTest.class).setLevel(Level.DEBUG);
+		assertBudget("LogAspect values", LOG_VALUES_BUDGET, new Runnable() {
+
+			@Override
+			public void run() {
+				logged(text, number);
+			}
+		});
+	}
+
+	@Test
+	public void testNullCheck() {
+		assertBudget("NullCheckAspect", NULLCHECK_BUDGET, new Runnable() {
+
+			@Override
+			public void run() {
+				checked(text, number);
+			}
+		});
+	}
+
+	@Test
+	public void testApiPolicy() {
+		lc.getLogger(ApiPolicyAspect.class).setLevel(Level.OFF);
+		long plain = AllocationMeter.perCall(new Runnable() {
+
+			@Override
+			public void run() {
+				overriddenSystemOut();
+			}
+		}, WARMUP, COUNT);
+		long advised = AllocationMeter.perCall(new Runnable() {
+
+			@Override
+			public void run() {
+				systemOut();
+			}
+		}, WARMUP, COUNT);
+		assertThat(advised - plain).as("ApiPolicyAspect bytes per call").isLessThanOrEqualTo(APIPOLICY_BUDGET);
+	}
+
+	/**
+	 * Baseline is plain(text, number) - same body without advice
+	 */
+	private void assertBudget(String name, long budget, Runnable advised) {
+		long plain = AllocationMeter.perCall(new Runnable() {
+
+			@Override
+			public void run() {
+				plain(text, number);
+			}
+		}, WARMUP, COUNT);
+		long bytes = AllocationMeter.perCall(advised, WARMUP, COUNT);
+		assertThat(bytes - plain).as(name + " bytes per call").isLessThanOrEqualTo(budget);
+	}
+
+	public int plain(String text, Integer number) {
+		return text.length() + number;
+	}
+
+	@Logged
+	public int logged(String text, Integer number) {
+		return text.length() + number;
+	}
+
+	public int checked(@NullCheck String text, @NullCheck Integer number) {
+		return text.length() + number;
+	}
+
+	@ApiPolicyOverride
+	private PrintStream overriddenSystemOut() {
+		return System.out;
+	}
+
+	private PrintStream systemOut() {
+		return System.out;
+	}
+}
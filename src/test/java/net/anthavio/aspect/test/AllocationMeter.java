@@ -0,0 +1,46 @@
+package net.anthavio.aspect.test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ *
+ * @author vanek
+ *
+ * Measures bytes allocated by current thread. Relies on com.sun.management.ThreadMXBean (HotSpot/OpenJ9)
+ */
+public class AllocationMeter {
+
+	private static final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	static {
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	public static boolean isSupported() {
+		return threadBean.isThreadAllocatedMemorySupported();
+	}
+
+	public static long getAllocatedBytes() {
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Executes runnable warmup times to get it JIT compiled and then measures average bytes allocated per execution
+	 */
+	public static long perCall(Runnable runnable, int warmup, int count) {
+		for (int i = 0; i < warmup; ++i) {
+			runnable.run();
+		}
+		//getThreadAllocatedBytes itself allocates a bit. Measure it and subtract
+		long overheadStart = getAllocatedBytes();
+		long overhead = getAllocatedBytes() - overheadStart;
+
+		long start = getAllocatedBytes();
+		for (int i = 0; i < count; ++i) {
+			runnable.run();
+		}
+		long allocated = getAllocatedBytes() - start - overhead;
+		return allocated / count;
+	}
+}
@@ -0,0 +1,225 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.AsyncLogging;
+import net.anthavio.aspect.AsyncLogging.Overflow;
+import net.anthavio.aspect.Logged;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class AsyncLoggingTest {
+
+	private static volatile CountDownLatch gateEntered;
+
+	private static volatile CountDownLatch gateOpen;
+
+	LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+	@BeforeClass
+	public static void beforeClass() {
+		HibernateHelper.isHibernatePresent(); //static initializer logs
+	}
+
+	@Before
+	public void before() {
+		lc.getLogger(AsyncLoggingTest.class).setLevel(Level.DEBUG);
+		gateEntered = new CountDownLatch(1);
+		gateOpen = new CountDownLatch(1);
+		AsyncLogging.flush(5, TimeUnit.SECONDS);
+		EventStoringAppender.getEvents().clear();
+		AsyncLogging.resetCounters();
+		AsyncLogging.setEnabled(true);
+	}
+
+	@After
+	public void after() {
+		gateOpen.countDown();
+		AsyncLogging.setEnabled(false);
+		AsyncLogging.setOverflow(Overflow.DROP);
+		AsyncLogging.flush(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testBackgroundThread() {
+		StringBuilder mutable = new StringBuilder("before");
+		String retVal = appending("immutable", mutable);
+		assertThat(AsyncLogging.flush(5, TimeUnit.SECONDS)).isTrue();
+
+		List<ILoggingEvent> events = EventStoringAppender.getEvents();
+		assertThat(events.size()).isEqualTo(2);
+		ILoggingEvent enter = events.get(0);
+		//value captured at the moment of call
+		assertThat(enter.getMessage()).isEqualTo(">>appending(immutable,before)>>");
+		assertThat(enter.getLevel()).isEqualTo(Level.DEBUG);
+		assertThat(enter.getThreadName()).startsWith("LogAspect-Async");
+		assertThat(enter.getMDCPropertyMap().get(AsyncLogging.MDC_THREAD)).isEqualTo(Thread.currentThread().getName());
+		assertThat(events.get(1).getMessage()).startsWith("<<appending: " + retVal + "<<");
+	}
+
+	@Test
+	public void testException() {
+		try {
+			failing();
+		} catch (IllegalStateException isx) {
+			//expected
+		}
+		assertThat(AsyncLogging.flush(5, TimeUnit.SECONDS)).isTrue();
+		List<ILoggingEvent> events = EventStoringAppender.getEvents();
+		assertThat(events.size()).isEqualTo(2);
+		assertThat(events.get(1).getLevel()).isEqualTo(Level.ERROR);
+		assertThat(events.get(1).getMessage()).startsWith("<!failing java.lang.IllegalStateException: Failing<!");
+	}
+
+	/**
+	 * Background thread is stuck in Gate.toString() so ring gets full
+	 */
+	@Test
+	public void testOverflow() throws Exception {
+		gated(Gate.GATE);
+		assertThat(gateEntered.await(5, TimeUnit.SECONDS)).isTrue();
+
+		for (int i = 0; i < AsyncLogging.getCapacity() && AsyncLogging.getDropped() == 0; ++i) {
+			filler(i);
+		}
+		assertThat(AsyncLogging.getDropped()).isGreaterThan(0);
+		assertThat(AsyncLogging.getPending()).isEqualTo(AsyncLogging.getCapacity());
+
+		AsyncLogging.setOverflow(Overflow.TYPES);
+		EventStoringAppender.getEvents().clear();
+		filler(-1);
+		assertThat(AsyncLogging.getDegraded()).isEqualTo(2);
+		List<ILoggingEvent> events = new ArrayList<ILoggingEvent>(EventStoringAppender.getEvents());
+		assertThat(events.size()).isEqualTo(2);
+		assertThat(events.get(0).getMessage()).isEqualTo(">>filler(Integer)>>");
+		assertThat(events.get(0).getThreadName()).isEqualTo(Thread.currentThread().getName());
+
+		AsyncLogging.setOverflow(Overflow.BLOCK);
+		Thread blocked = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				filler(-2);
+			}
+		});
+		blocked.start();
+		blocked.join(200);
+		assertThat(blocked.isAlive()).isTrue();
+
+		gateOpen.countDown();
+		blocked.join(5000);
+		assertThat(blocked.isAlive()).isFalse();
+		assertThat(AsyncLogging.flush(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(AsyncLogging.getPending()).isEqualTo(0);
+	}
+
+	/**
+	 * Error thrown while rendering on background thread must not kill it
+	 */
+	@Test
+	public void testErrorInToString() {
+		broken(Broken.BROKEN);
+		assertThat(AsyncLogging.flush(5, TimeUnit.SECONDS)).isTrue();
+		EventStoringAppender.getEvents().clear();
+
+		filler(1);
+		assertThat(AsyncLogging.flush(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(EventStoringAppender.getEvents().get(0).getMessage()).isEqualTo(">>filler(1)>>");
+	}
+
+	/**
+	 * Mutable value is rendered on calling thread. Its failing toString() must not leave claimed slot in the ring
+	 */
+	@Test
+	public void testExceptionInCallerToString() {
+		Object bad = new Object() {
+
+			@Override
+			public String toString() {
+				throw new IllegalStateException("bad toString");
+			}
+		};
+		try {
+			mutable(bad);
+		} catch (IllegalStateException isx) {
+			assertThat(isx.getMessage()).isEqualTo("bad toString"); //same as synchronous logging
+		}
+		assertThat(AsyncLogging.flush(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(AsyncLogging.getPending()).isEqualTo(0);
+		EventStoringAppender.getEvents().clear();
+
+		filler(1);
+		assertThat(AsyncLogging.flush(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(EventStoringAppender.getEvents().get(0).getMessage()).isEqualTo(">>filler(1)>>");
+	}
+
+	@Logged
+	private String appending(String immutable, StringBuilder mutable) {
+		mutable.append(" after");
+		return immutable + " " + mutable;
+	}
+
+	@Logged
+	private void failing() {
+		throw new IllegalStateException("Failing");
+	}
+
+	@Logged
+	private void gated(Gate gate) {
+	}
+
+	@Logged
+	private void filler(int i) {
+	}
+
+	@Logged
+	private void mutable(Object value) {
+	}
+
+	@Logged
+	private void broken(Broken broken) {
+	}
+
+	enum Gate {
+		GATE;
+
+		@Override
+		public String toString() {
+			gateEntered.countDown();
+			try {
+				gateOpen.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+			}
+			return name();
+		}
+	}
+
+	enum Broken {
+		BROKEN;
+
+		@Override
+		public String toString() {
+			throw new StackOverflowError("Broken toString()");
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.ExecStats;
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.StatsRegistry;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+
+/**
+ * @Logged methods returning CompletionStage are logged and measured when result completes
+ *
+ * @author vanek
+ *
+ */
+public class AsyncResultTest {
+
+	private static final String PENDING = AsyncResultTest.class.getName() + ".pending()";
+
+	private static final String PLAIN = AsyncResultTest.class.getName() + ".plain()";
+
+	private static final String UNOBSERVABLE = AsyncResultTest.class.getName() + ".unobservable()";
+
+	LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+	private CompletableFuture<String> future;
+
+	@BeforeClass
+	public static void beforeClass() {
+		HibernateHelper.isHibernatePresent(); //static initializer logs
+	}
+
+	@Before
+	public void before() {
+		lc.getLogger(AsyncResultTest.class).setLevel(Level.DEBUG);
+		future = CompletableFuture.completedFuture("warmup");
+		pending();
+		plain();
+		StatsRegistry.reset(PENDING);
+		StatsRegistry.reset(PLAIN);
+		EventStoringAppender.getEvents().clear();
+		LogAspectTest.ManualClock.nanos = 0;
+	}
+
+	@Test
+	public void testCompleted() {
+		future = new CompletableFuture<String>();
+		assertThat(pending()).isSameAs(future);
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(1); //enter only
+		assertThat(StatsRegistry.get(PENDING).getExecutions()).isEqualTo(0);
+
+		LogAspectTest.ManualClock.nanos = 1000;
+		future.complete("done");
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
+		assertThat(EventStoringAppender.getEvents().get(1).getMessage()).isEqualTo("<<pending: done<< 1000ns");
+
+		ExecStats stats = StatsRegistry.get(PENDING);
+		assertThat(stats.getExecutions()).isEqualTo(1);
+		assertThat(stats.getTotalNanos()).isEqualTo(1000);
+		assertThat(stats.getTotalSelfNanos()).isEqualTo(1000);
+	}
+
+	@Test
+	public void testFailed() {
+		future = new CompletableFuture<String>();
+		pending();
+		LogAspectTest.ManualClock.nanos = 2000;
+		future.completeExceptionally(new IllegalStateException("Async failure"));
+
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
+		assertThat(EventStoringAppender.getEvents().get(1).getLevel()).isEqualTo(Level.ERROR);
+		assertThat(EventStoringAppender.getEvents().get(1).getMessage()).isEqualTo(
+				"<!pending java.lang.IllegalStateException: Async failure<! 2000ns");
+		ExecStats stats = StatsRegistry.get(PENDING);
+		assertThat(stats.getExecutions()).isEqualTo(1);
+		assertThat(stats.getExceptions()).isEqualTo(1);
+	}
+
+	@Test
+	public void testAlreadyCompleted() {
+		future = CompletableFuture.completedFuture("now");
+		pending();
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
+		assertThat(EventStoringAppender.getEvents().get(1).getMessage()).isEqualTo("<<pending: now<< 0ns");
+		assertThat(StatsRegistry.get(PENDING).getExecutions()).isEqualTo(1);
+	}
+
+	/**
+	 * Plain Future cannot be observed without blocking - timed until return
+	 */
+	@Test
+	public void testPlainFuture() {
+		plain();
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
+		assertThat(EventStoringAppender.getEvents().get(1).getMessage()).startsWith("<<plain: ");
+		assertThat(StatsRegistry.get(PLAIN).getExecutions()).isEqualTo(1);
+	}
+
+	/**
+	 * Callback registration fails and exit logging of plain result fails too. Original exception is thrown
+	 * and already popped frame of nested call is not popped again
+	 */
+	@Test
+	public void testRegistrationFailed() {
+		for (int i = 1; i <= 2; ++i) {
+			try {
+				caller();
+				Assertions.fail("Expected IllegalStateException");
+			} catch (IllegalStateException isx) {
+				assertThat(isx.getMessage()).isEqualTo("Unprintable");
+			}
+			assertThat(StatsRegistry.get(UNOBSERVABLE).getExceptions()).isEqualTo(i);
+		}
+		plain();
+		assertThat(StatsRegistry.get(PLAIN).getExecutions()).isEqualTo(1);
+	}
+
+	@Logged(statistics = true)
+	public void caller() {
+		unobservable();
+	}
+
+	@Logged(statistics = true)
+	public CompletableFuture<String> unobservable() {
+		return new CompletableFuture<String>() {
+
+			@Override
+			public CompletableFuture<String> whenComplete(BiConsumer<? super String, ? super Throwable> action) {
+				throw new UnsupportedOperationException("No callbacks");
+			}
+
+			@Override
+			public String toString() {
+				throw new IllegalStateException("Unprintable");
+			}
+		};
+	}
+
+	@Logged(statistics = true, clock = LogAspectTest.ManualClock.class, timeUnit = TimeUnit.NANOSECONDS)
+	public CompletableFuture<String> pending() {
+		return future;
+	}
+
+	@Logged(statistics = true)
+	public Future<String> plain() {
+		return new FutureTask<String>(new Callable<String>() {
+
+			@Override
+			public String call() {
+				return "plain";
+			}
+		});
+	}
+}
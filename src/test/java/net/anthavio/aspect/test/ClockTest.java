@@ -0,0 +1,124 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.Clock;
+import net.anthavio.aspect.Logged;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Invalid clock configuration must not break @Logged methods
+ *
+ * @author vanek
+ *
+ */
+public class ClockTest {
+
+	@BeforeClass
+	public static void beforeClass() {
+		HibernateHelper.isHibernatePresent(); //static initializer logs
+	}
+
+	@Before
+	public void before() {
+		EventStoringAppender.getEvents().clear();
+	}
+
+	@Test
+	public void testUnknownClockClass() throws Exception {
+		assertThat(defaultClock("com.example.MissingClock")).isEqualTo(Clock.Precise.class.getName());
+		assertThat(warnings()).contains("Invalid LogAspect.clock com.example.MissingClock. Using " + Clock.Precise.class.getName());
+	}
+
+	@Test
+	public void testNotClockClass() throws Exception {
+		assertThat(defaultClock("java.lang.String")).isEqualTo(Clock.Precise.class.getName());
+		assertThat(warnings()).contains("Invalid LogAspect.clock java.lang.String. Using " + Clock.Precise.class.getName());
+	}
+
+	@Test
+	public void testValidClock() throws Exception {
+		assertThat(defaultClock("coarse")).isEqualTo(Clock.Coarse.class.getName());
+		assertThat(warnings()).isEmpty();
+	}
+
+	@Test
+	public void testInvalidResolution() {
+		String[] invalid = { "fast", "0", "-1" };
+		for (String resolution : invalid) {
+			assertThat(coarse(resolution).getResolutionNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+			assertThat(warnings()).contains("Invalid LogAspect.clock.resolution " + resolution + ". Using 1000");
+		}
+		assertThat(coarse("500").getResolutionNanos()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(500));
+	}
+
+	@Test
+	public void testUncreatableClock() {
+		assertThat(uncreatable()).isEqualTo("ok");
+		assertThat(warnings()).contains("Cannot create Clock " + NoDefaultConstructorClock.class.getName() + ". Using "
+				+ Clock.Precise.class.getName());
+	}
+
+	@Logged(clock = NoDefaultConstructorClock.class)
+	public String uncreatable() {
+		return "ok";
+	}
+
+	private static Clock.Coarse coarse(String resolution) {
+		System.setProperty("LogAspect.clock.resolution", resolution);
+		try {
+			return new Clock.Coarse();
+		} finally {
+			System.clearProperty("LogAspect.clock.resolution");
+		}
+	}
+
+	/**
+	 * Default Clock is chosen in static initializer, so Clock is loaded again by isolated ClassLoader
+	 *
+	 * @return class name of default Clock
+	 */
+	private static String defaultClock(String property) throws Exception {
+		System.setProperty("LogAspect.clock", property);
+		try {
+			Class<?> clazz = Class.forName(Clock.class.getName(), true, new RedeployLoader(Clock.class.getName()));
+			Field field = clazz.getDeclaredField("DEFAULT");
+			field.setAccessible(true);
+			return field.get(null).getClass().getName();
+		} finally {
+			System.clearProperty("LogAspect.clock");
+		}
+	}
+
+	private static List<String> warnings() {
+		List<String> warnings = new ArrayList<String>();
+		for (ILoggingEvent event : EventStoringAppender.getEvents()) {
+			if (event.getLoggerName().equals(Clock.class.getName())) {
+				warnings.add(event.getMessage());
+			}
+		}
+		return warnings;
+	}
+
+	public static class NoDefaultConstructorClock extends Clock {
+
+		public NoDefaultConstructorClock(long offset) {
+		}
+
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	}
+}
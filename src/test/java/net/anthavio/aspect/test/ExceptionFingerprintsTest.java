@@ -0,0 +1,156 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.ExceptionFingerprints;
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.Logged.Mode;
+import net.anthavio.aspect.StatsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class ExceptionFingerprintsTest {
+
+	private static final String FAILING = ExceptionFingerprintsTest.class.getName() + ".failing(int)";
+
+	LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+	@BeforeClass
+	public static void beforeClass() {
+		HibernateHelper.isHibernatePresent(); //static initializer logs
+	}
+
+	@Before
+	public void before() {
+		lc.getLogger(ExceptionFingerprintsTest.class).setLevel(Level.INFO);
+		ExceptionFingerprints.setWindow(1, TimeUnit.HOURS);
+		failing(0);
+		StatsRegistry.reset(FAILING);
+		EventStoringAppender.getEvents().clear();
+	}
+
+	@After
+	public void after() {
+		ExceptionFingerprints.setWindow(0, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testRepeatsSummarized() {
+		long suppressed = ExceptionFingerprints.getSuppressed();
+		for (int i = 0; i < 5; ++i) {
+			fail(1);
+		}
+		//first one only, with stack trace
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(1);
+		assertThat(EventStoringAppender.getEvents().get(0).getThrowableProxy()).isNotNull();
+		assertThat(ExceptionFingerprints.getSuppressed() - suppressed).isEqualTo(4);
+		//every one counted
+		assertThat(StatsRegistry.get(FAILING).getExceptions()).isEqualTo(5);
+
+		ExceptionFingerprints.report();
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
+		assertThat(EventStoringAppender.getEvents().get(1).getLevel()).isEqualTo(Level.ERROR);
+		assertThat(EventStoringAppender.getEvents().get(1).getMessage()).isEqualTo(
+				"<!failing java.lang.IllegalStateException repeated 4 more times<!");
+
+		ExceptionFingerprints.report(); //nothing new
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testSingleRepeat() {
+		fail(1);
+		fail(1);
+		ExceptionFingerprints.report();
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
+		assertThat(EventStoringAppender.getEvents().get(1).getMessage()).isEqualTo(
+				"<!failing java.lang.IllegalStateException repeated 1 more time<!");
+	}
+
+	/**
+	 * Repeat after window expired is first occurrence of new window - logged in full again
+	 */
+	@Test
+	public void testWindowExpired() throws Exception {
+		ExceptionFingerprints.setWindow(200, TimeUnit.MILLISECONDS);
+		fail(1);
+		fail(1);
+		Thread.sleep(300);
+		fail(1);
+		List<ILoggingEvent> events = EventStoringAppender.getEvents();
+		assertThat(events.size()).isEqualTo(3);
+		assertThat(events.get(1).getMessage()).isEqualTo("<!failing java.lang.IllegalStateException repeated 1 more time<!");
+		assertThat(events.get(2).getMessage()).startsWith("<!failing java.lang.IllegalStateException: State<!");
+		assertThat(events.get(2).getThrowableProxy()).isNotNull();
+	}
+
+	@Test
+	public void testDifferentFingerprints() {
+		fail(1);
+		fail(2); //different exception
+		fail(3); //same exception, different frame
+		fail(1);
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(3);
+	}
+
+	@Test
+	public void testDisabled() {
+		ExceptionFingerprints.setWindow(0, TimeUnit.SECONDS);
+		for (int i = 0; i < 3; ++i) {
+			fail(1);
+		}
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(3);
+	}
+
+	@Test
+	public void testError() {
+		try {
+			failing(4);
+		} catch (Error e) {
+			//expected
+		}
+		assertThat(StatsRegistry.get(FAILING).getExecutions()).isEqualTo(1);
+		assertThat(StatsRegistry.get(FAILING).getExceptions()).isEqualTo(1);
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(1);
+		assertThat(EventStoringAppender.getEvents().get(0).getMessage()).startsWith("<!failing java.lang.Error: Fatal<!");
+	}
+
+	private void fail(int kind) {
+		try {
+			failing(kind);
+		} catch (RuntimeException rx) {
+			//expected
+		}
+	}
+
+	@Logged(mode = Mode.EXIT, statistics = true, stackTrace = true)
+	public int failing(int kind) {
+		if (kind == 1) {
+			throw new IllegalStateException("State");
+		} else if (kind == 2) {
+			throw new IllegalArgumentException("Argument");
+		} else if (kind == 3) {
+			throw new IllegalStateException("Elsewhere");
+		} else if (kind == 4) {
+			throw new Error("Fatal");
+		}
+		return kind;
+	}
+}
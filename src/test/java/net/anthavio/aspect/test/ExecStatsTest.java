@@ -0,0 +1,123 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.aspect.ExecStats;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class ExecStatsTest {
+
+	@Test
+	public void testSingleThread() {
+		ExecStats stats = new ExecStats();
+		stats.execution(1000, 10);
+		stats.execution(2000, 30);
+		stats.exception(3000, 50);
+
+		assertThat(stats.getExecutions()).isEqualTo(3);
+		assertThat(stats.getExceptions()).isEqualTo(1);
+		assertThat(stats.getTotalNanos()).isEqualTo(90);
+		assertThat(stats.getAverageNanos()).isEqualTo(30);
+		assertThat(stats.getAverageExceptionNanos()).isEqualTo(50);
+		assertThat(stats.getLastExecutionMillis()).isEqualTo(3000);
+		assertThat(stats.getLastExceptionNanos()).isEqualTo(50);
+
+		stats.reset();
+		assertThat(stats.getExecutions()).isEqualTo(0);
+		assertThat(stats.getAverageNanos()).isEqualTo(0);
+		assertThat(stats.getLastExecutionDate()).isNull();
+	}
+
+	/**
+	 * Minute buckets are rotated by wall-clock time of execution
+	 */
+	@Test
+	public void testWindow() {
+		long minute = TimeUnit.MINUTES.toMillis(1);
+		long start = 1000 * minute;
+		ExecStats stats = new ExecStats();
+		stats.execution(start, 10);
+		stats.execution(start + 2 * minute, 20);
+		stats.exception(start + 4 * minute + 500, 60);
+		long now = start + 4 * minute + 1000;
+
+		ExecStats.Window last = stats.getWindow(1, now);
+		assertThat(last.getExecutions()).isEqualTo(1);
+		assertThat(last.getExceptions()).isEqualTo(1);
+		assertThat(last.getAverageNanos()).isEqualTo(60);
+
+		ExecStats.Window five = stats.getWindow(5, now);
+		assertThat(five.getExecutions()).isEqualTo(3);
+		assertThat(five.getTotalNanos()).isEqualTo(90);
+		assertThat(stats.getWindow(3, now).getExecutions()).isEqualTo(2);
+
+		//15 minutes later first bucket slot is reused
+		stats.execution(start + 15 * minute, 100);
+		now = start + 15 * minute;
+		assertThat(stats.getWindow(15, now).getExecutions()).isEqualTo(3);
+		assertThat(stats.getWindow(1, now).getTotalNanos()).isEqualTo(100);
+		//lifetime totals
+		assertThat(stats.getExecutions()).isEqualTo(4);
+
+		stats.reset();
+		assertThat(stats.getWindow(15, now).getExecutions()).isEqualTo(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWindowTooLong() {
+		new ExecStats().getWindow(16);
+	}
+
+	/**
+	 * Many threads hammering single ExecStats must not loose any count
+	 */
+	@Test
+	public void testConcurrentCounts() throws Exception {
+		final ExecStats stats = new ExecStats();
+		final int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+		final int loops = 100000;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; ++t) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException ix) {
+						return;
+					}
+					for (int i = 0; i < loops; ++i) {
+						if (i % 10 == 0) {
+							stats.exception(i, 3);
+						} else {
+							stats.execution(i, 1);
+						}
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+		long executions = (long) threads * loops;
+		long exceptions = executions / 10;
+		assertThat(stats.getExecutions()).isEqualTo(executions);
+		assertThat(stats.getExceptions()).isEqualTo(exceptions);
+		assertThat(stats.getTotalNanos()).isEqualTo((executions - exceptions) * 1 + exceptions * 3);
+		assertThat(stats.getAverageExceptionNanos()).isEqualTo(3);
+	}
+}
@@ -0,0 +1,112 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.LogAspect;
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.StatsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class KillSwitchTest {
+
+	private static final String KILLED = KillSwitchTest.class.getName() + ".killable(java.lang.String)";
+
+	LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+	@BeforeClass
+	public static void beforeClass() {
+		HibernateHelper.isHibernatePresent(); //static initializer logs
+	}
+
+	@Before
+	public void before() {
+		lc.getLogger(KillSwitchTest.class).setLevel(Level.DEBUG);
+		killable("x");
+		StatsRegistry.reset(KILLED);
+		EventStoringAppender.getEvents().clear();
+	}
+
+	@After
+	public void after() {
+		LogAspect.setKillSwitch(false);
+		LogAspect.setKilledPackages();
+		StatsRegistry.setJmxEnabled(false);
+	}
+
+	@Test
+	public void testKillSwitch() {
+		LogAspect.setKillSwitch(true);
+		assertThat(killable("x")).isEqualTo("x");
+		assertThat(EventStoringAppender.getEvents()).isEmpty();
+		assertThat(StatsRegistry.get(KILLED).getExecutions()).isEqualTo(0);
+
+		LogAspect.setKillSwitch(false);
+		killable("x");
+		assertThat(EventStoringAppender.getEvents()).hasSize(2);
+		assertThat(StatsRegistry.get(KILLED).getExecutions()).isEqualTo(1);
+	}
+
+	@Test
+	public void testKilledPackages() {
+		//other package
+		LogAspect.setKilledPackages("net.anthavio.aspect.test.other", "net.anthavio.aspect.tes");
+		killable("x");
+		assertThat(EventStoringAppender.getEvents()).hasSize(2);
+
+		LogAspect.setKilledPackages("net.anthavio.aspect");
+		assertThat(LogAspect.getKilledPackages()).containsExactly("net.anthavio.aspect");
+		EventStoringAppender.getEvents().clear();
+		killable("x");
+		assertThat(EventStoringAppender.getEvents()).isEmpty();
+		assertThat(StatsRegistry.get(KILLED).getExecutions()).isEqualTo(1);
+
+		//class
+		LogAspect.setKilledPackages(KillSwitchTest.class.getName());
+		killable("x");
+		assertThat(EventStoringAppender.getEvents()).isEmpty();
+
+		LogAspect.setKilledPackages();
+		killable("x");
+		assertThat(EventStoringAppender.getEvents()).hasSize(2);
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		StatsRegistry.setJmxEnabled(true);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(StatsRegistry.JMX_DOMAIN + ":type=KillSwitch");
+		server.setAttribute(name, new Attribute("KilledPackages", "com.example, net.anthavio.aspect.test"));
+		assertThat(LogAspect.getKilledPackages()).containsExactly("com.example", "net.anthavio.aspect.test");
+		server.setAttribute(name, new Attribute("KillSwitch", true));
+		assertThat(LogAspect.isKillSwitch()).isTrue();
+		assertThat((Boolean) server.getAttribute(name, "KillSwitch")).isTrue();
+
+		StatsRegistry.setJmxEnabled(false);
+		assertThat(server.isRegistered(name)).isFalse();
+	}
+
+	@Logged(statistics = true)
+	private String killable(String param) {
+		return param;
+	}
+}
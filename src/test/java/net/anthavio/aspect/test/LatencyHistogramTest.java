@@ -0,0 +1,119 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.anthavio.aspect.LatencyHistogram;
+import net.anthavio.aspect.LatencyHistogram.Snapshot;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000000; ++i) {
+			histogram.record(i);
+		}
+		Snapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.getCount()).isEqualTo(1000000);
+		assertThat(snapshot.getMax()).isEqualTo(1000000);
+		//sub-bucket precision is 1/16
+		assertPrecision(snapshot.getValueAtPercentile(50), 500000);
+		assertPrecision(snapshot.getValueAtPercentile(90), 900000);
+		assertPrecision(snapshot.getValueAtPercentile(99), 990000);
+		assertPrecision(snapshot.getValueAtPercentile(99.9), 999000);
+		assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(1000000);
+		assertPrecision(snapshot.getMean(), 500000);
+	}
+
+	@Test
+	public void testSmallValuesExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 0; i < 16; ++i) {
+			histogram.record(i);
+		}
+		Snapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.getValueAtPercentile(50)).isEqualTo(7);
+		assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(15);
+	}
+
+	@Test
+	public void testHugeValue() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(-1);
+		Snapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.getCount()).isEqualTo(2);
+		assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(Long.MAX_VALUE);
+		assertThat(snapshot.getValueAtPercentile(1)).isEqualTo(0);
+	}
+
+	@Test
+	public void testMerge() {
+		LatencyHistogram fast = new LatencyHistogram();
+		LatencyHistogram slow = new LatencyHistogram();
+		for (int i = 0; i < 99; ++i) {
+			fast.record(1000);
+		}
+		slow.record(1000000);
+
+		Snapshot merged = fast.snapshot().merge(slow.snapshot());
+		assertThat(merged.getCount()).isEqualTo(100);
+		assertThat(merged.getMax()).isEqualTo(1000000);
+		assertPrecision(merged.getValueAtPercentile(99), 1000);
+		assertThat(merged.getValueAtPercentile(99.9)).isEqualTo(1000000);
+
+		fast.add(slow);
+		assertThat(fast.snapshot().getCount()).isEqualTo(100);
+		assertThat(fast.snapshot().getMax()).isEqualTo(1000000);
+	}
+
+	@Test
+	public void testMinus() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000000);
+		Snapshot previous = histogram.snapshot();
+		histogram.record(1000);
+		histogram.record(2000);
+
+		Snapshot interval = histogram.snapshot().minus(previous);
+		assertThat(interval.getCount()).isEqualTo(2);
+		assertPrecision(interval.getMax(), 2000);
+		assertPrecision(interval.getValueAtPercentile(50), 1000);
+
+		histogram.reset();
+		histogram.record(3000);
+		assertThat(histogram.snapshot().minus(previous).getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testRecordDoesNotAllocate() {
+		if (!AllocationMeter.isSupported()) {
+			return;
+		}
+		final LatencyHistogram histogram = new LatencyHistogram();
+		long bytes = AllocationMeter.perCall(new Runnable() {
+
+			long value = 1;
+
+			@Override
+			public void run() {
+				histogram.record(value++);
+			}
+		}, 20000, 100000);
+		assertThat(bytes).isEqualTo(0);
+	}
+
+	/**
+	 * Reported value is highest value of the bucket, so it is never lower then recorded and at most 1/16 higher
+	 */
+	private static void assertPrecision(long actual, long expected) {
+		assertThat(actual).isGreaterThanOrEqualTo(expected - 1).isLessThanOrEqualTo(expected + expected / 16);
+	}
+}
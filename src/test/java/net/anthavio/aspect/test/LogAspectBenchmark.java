@@ -0,0 +1,96 @@
+package net.anthavio.aspect.test;
+
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.aspect.AsyncLogging;
+import net.anthavio.aspect.Logged;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+/**
+ * Reports bytes allocated and time spent per @Logged call for various log levels.
+ * Logging events go into appender that throws them away, so numbers are LogAspect + logback overhead.
+ *
+ * Not a test - run main() manually. For precise latency numbers use JMH benchmarks.
+ *
+ * @author vanek
+ *
+ */
+public class LogAspectBenchmark {
+
+	private static final int WARMUP = 50000;
+
+	private static final int COUNT = 200000;
+
+	public static void main(String[] args) {
+		LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+		Logger logger = lc.getLogger(LogAspectBenchmark.class);
+		logger.detachAndStopAllAppenders();
+		logger.setAdditive(false);
+		AppenderBase<ILoggingEvent> discarding = new AppenderBase<ILoggingEvent>() {
+
+			@Override
+			protected void append(ILoggingEvent event) {
+				event.getFormattedMessage();
+			}
+		};
+		discarding.setContext(lc);
+		discarding.start();
+		logger.addAppender(discarding);
+
+		final LogAspectBenchmark target = new LogAspectBenchmark();
+		final Object[] values = { "string value", Integer.valueOf(123456), Long.valueOf(-987654321L) };
+		Runnable logged = new Runnable() {
+
+			@Override
+			public void run() {
+				target.logged((String) values[0], (Integer) values[1], (Long) values[2]);
+			}
+		};
+		Runnable plain = new Runnable() {
+
+			@Override
+			public void run() {
+				target.plain((String) values[0], (Integer) values[1], (Long) values[2]);
+			}
+		};
+
+		System.out.println("scenario            bytes/call  ns/call");
+		report("not logged", plain);
+		logger.setLevel(Level.OFF);
+		report("OFF", logged);
+		logger.setLevel(Level.INFO);
+		report("INFO (types)", logged);
+		logger.setLevel(Level.DEBUG);
+		report("DEBUG (values)", logged);
+		AsyncLogging.setEnabled(true);
+		report("DEBUG async", logged);
+		AsyncLogging.flush(10, TimeUnit.SECONDS);
+		System.out.println("async dropped: " + AsyncLogging.getDropped());
+	}
+
+	private static void report(String scenario, Runnable runnable) {
+		long bytes = AllocationMeter.isSupported() ? AllocationMeter.perCall(runnable, WARMUP, COUNT) : -1;
+		long start = System.nanoTime();
+		for (int i = 0; i < COUNT; ++i) {
+			runnable.run();
+		}
+		long nanos = (System.nanoTime() - start) / COUNT;
+		System.out.println(String.format("%-20s%10d%9d", scenario, bytes, nanos));
+	}
+
+	@Logged
+	public String logged(String string, int integer, long number) {
+		return string;
+	}
+
+	public String plain(String string, int integer, long number) {
+		return string;
+	}
+}
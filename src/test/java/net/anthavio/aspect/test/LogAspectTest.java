@@ -2,6 +2,7 @@ package net.anthavio.aspect.test;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -9,10 +10,13 @@ import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.Clock;
 import net.anthavio.aspect.Logged;
 import net.anthavio.aspect.Logged.Mode;
+import net.anthavio.aspect.StatsRegistry;
 
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
@@ -35,6 +39,11 @@ public class LogAspectTest {
 
 	}
 
+	/**
+	 * AspectJ around advice allocates AroundClosure, JoinPoint and arguments array on every call
+	 */
+	private static final long DISABLED_BUDGET = 160;
+
 	LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
 
 	@BeforeClass
@@ -300,6 +309,152 @@ public class LogAspectTest {
 		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
 	}
 
+	@Test
+	public void testTimeUnit() {
+		micros("argument1");
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
+		assertThat(EventStoringAppender.getEvents().get(1).getMessage()).matches(".*<< \\d+\u00B5s");
+
+		EventStoringAppender.getEvents().clear();
+		coarseNanos("argument1");
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(2);
+		assertThat(EventStoringAppender.getEvents().get(1).getMessage()).matches(".*<< \\d+ns");
+	}
+
+	@Test
+	public void testSampleEvery() {
+		for (int i = 0; i < 9; ++i) {
+			everyThird(i);
+		}
+		//1st, 4th, 7th
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(6);
+		assertThat(EventStoringAppender.getEvents().get(2).getMessage()).isEqualTo(">>everyThird(3)>>");
+	}
+
+	@Test
+	public void testMaxPerSecond() {
+		ManualClock.nanos = 0;
+		for (int i = 0; i < 10; ++i) {
+			twicePerSecond(i);
+		}
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(4);
+
+		ManualClock.nanos = TimeUnit.SECONDS.toNanos(1);
+		twicePerSecond(10);
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(6);
+	}
+
+	@Test
+	public void testSlowMode() throws InterruptedException {
+		slowOrFast(0);
+		assertThat(EventStoringAppender.getEvents()).isEmpty();
+
+		slowOrFast(60);
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(1);
+		assertThat(EventStoringAppender.getEvents().get(0).getMessage()).matches("<>slowOrFast\\(60\\): 60<> \\d+ms");
+	}
+
+	/**
+	 * toString() of logged value calls another @Logged method while message buffer of the thread is in use
+	 */
+	@Test
+	public void testReentrantToString() {
+		Object reentrant = new Object() {
+
+			@Override
+			public String toString() {
+				return simpleString("inner");
+			}
+		};
+		simpleObject(reentrant);
+		List<ILoggingEvent> events = EventStoringAppender.getEvents();
+		assertThat(events.size()).isEqualTo(6);
+		assertThat(events.get(0).getMessage()).isEqualTo(">>simpleString(inner)>>");
+		assertThat(events.get(2).getMessage()).isEqualTo(">>simpleObject(inner)>>");
+	}
+
+	@Test
+	public void testPrimitiveValues() {
+		primitives(Integer.MIN_VALUE, Long.MAX_VALUE, (short) -1, (byte) 7);
+		assertThat(EventStoringAppender.getEvents().get(0).getMessage()).isEqualTo(
+				">>primitives(-2147483648,9223372036854775807,-1,7)>>");
+		assertThat(EventStoringAppender.getEvents().get(1).getMessage()).startsWith("<<primitives: 9223372036854775807<<");
+	}
+
+	/**
+	 * Statistics count every execution and exceptions are logged even when sampled out
+	 */
+	@Test
+	public void testSampledStatistics() {
+		for (int i = 0; i < 5; ++i) {
+			sampledStats(i);
+		}
+		try {
+			sampledStats(-1);
+		} catch (IllegalArgumentException iax) {
+			//expected
+		}
+		String name = LogAspectTest.class.getName() + ".sampledStats(int)";
+		assertThat(StatsRegistry.get(name).getExecutions()).isEqualTo(6);
+		assertThat(StatsRegistry.get(name).getExceptions()).isEqualTo(1);
+		//1st execution enter + exit and the exception
+		assertThat(EventStoringAppender.getEvents().size()).isEqualTo(3);
+		assertThat(EventStoringAppender.getEvents().get(2).getLevel()).isEqualTo(Level.ERROR);
+	}
+
+	/**
+	 * OFF level and no statistics - advice must go straight to proceed() without any argument copy or message building
+	 */
+	@Test
+	public void testDisabledAllocations() {
+		if (!AllocationMeter.isSupported()) {
+			return;
+		}
+		lc.getLogger(LogAspectTest.class).setLevel(Level.OFF);
+
+		final String arg1 = "argument1";
+		long plainBytes = AllocationMeter.perCall(new Runnable() {
+
+			@Override
+			public void run() {
+				notLogged(arg1, 5);
+			}
+		}, 20000, 10000);
+
+		long disabledBytes = AllocationMeter.perCall(new Runnable() {
+
+			@Override
+			public void run() {
+				disabled(arg1, 5);
+			}
+		}, 20000, 10000);
+
+		assertThat(EventStoringAppender.getEvents()).isEmpty();
+		//only AspectJ around closure and JoinPoint are allowed
+		assertThat(disabledBytes - plainBytes).isLessThanOrEqualTo(DISABLED_BUDGET);
+	}
+
+	/**
+	 * Cached plan and statistics of @Logged class loaded by discarded ClassLoader must not keep it reachable
+	 */
+	@Test
+	public void testClassUnloading() throws Exception {
+		ClassLoader loader = new RedeployLoader(Redeployed.class.getName());
+		Class<?> clazz = loader.loadClass(Redeployed.class.getName());
+		assertThat(clazz).isNotSameAs(Redeployed.class);
+		assertThat(clazz.getMethod("work", int.class).invoke(clazz.newInstance(), 1)).isEqualTo(2);
+		assertThat(StatsRegistry.getNames()).contains(Redeployed.class.getName() + ".work(int)");
+
+		WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(loader);
+		loader = null;
+		clazz = null;
+		for (int i = 0; i < 50 && reference.get() != null; ++i) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertThat(reference.get()).isNull();
+	}
+
 	@Logged
 	private String simpleString(String param1) {
 		return param1;
@@ -378,6 +533,77 @@ public class LogAspectTest {
 	private void voidMethod() {
 	}
 
+	@Logged(timeUnit = TimeUnit.MICROSECONDS)
+	private String micros(String param1) {
+		return param1;
+	}
+
+	@Logged(timeUnit = TimeUnit.NANOSECONDS, clock = Clock.Coarse.class)
+	private String coarseNanos(String param1) {
+		return param1;
+	}
+
+	@Logged
+	private Object simpleObject(Object param1) {
+		return param1;
+	}
+
+	@Logged
+	private long primitives(int param1, long param2, short param3, byte param4) {
+		return param2;
+	}
+
+	@Logged(mode = Mode.SLOW, slowThreshold = 50)
+	private long slowOrFast(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+		return millis;
+	}
+
+	@Logged(sampleEvery = 3)
+	private int everyThird(int param1) {
+		return param1;
+	}
+
+	@Logged(maxPerSecond = 2, clock = ManualClock.class)
+	private int twicePerSecond(int param1) {
+		return param1;
+	}
+
+	@Logged(sampleEvery = 1000, statistics = true)
+	private int sampledStats(int param1) {
+		if (param1 < 0) {
+			throw new IllegalArgumentException("Negative");
+		}
+		return param1;
+	}
+
+	public static class Redeployed {
+
+		@Logged(statistics = true)
+		public int work(int param) {
+			return param + 1;
+		}
+	}
+
+	public static class ManualClock extends Clock {
+
+		static volatile long nanos;
+
+		@Override
+		public long nanoTime() {
+			return nanos;
+		}
+	}
+
+	@Logged
+	private String disabled(String param1, int param2) {
+		return param1;
+	}
+
+	private String notLogged(String param1, int param2) {
+		return param1;
+	}
+
 }
 
 class DummyAnnotatedConstructor {
@@ -0,0 +1,165 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.LogOverrides;
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.StatsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class LogOverridesTest {
+
+	private static final String CLASS = LogOverridesTest.class.getName();
+
+	LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+	@BeforeClass
+	public static void beforeClass() {
+		HibernateHelper.isHibernatePresent(); //static initializer logs
+	}
+
+	@Before
+	public void before() {
+		lc.getLogger(LogOverridesTest.class).setLevel(Level.INFO);
+		EventStoringAppender.getEvents().clear();
+	}
+
+	@After
+	public void after() {
+		LogOverrides.clear();
+	}
+
+	@Test
+	public void testOverrides() {
+		overridden("secret", 1);
+		assertThat(messages()).containsExactly(">>overridden(String,Integer)>>", "<<overridden: String<<");
+
+		Properties properties = new Properties();
+		properties.setProperty(CLASS.substring(0, CLASS.lastIndexOf('.')) + ".*", "forceValues=true, logTime=false");
+		properties.setProperty(CLASS, "mode=EXIT");
+		properties.setProperty(CLASS + ".overridden", "notParIdxs=0, statistics=true, invalid");
+		LogOverrides.set(properties);
+		EventStoringAppender.getEvents().clear();
+
+		overridden("secret", 1);
+		assertThat(messages()).containsExactly("<<overridden: secret1<<");
+		assertThat(StatsRegistry.get(CLASS + ".overridden(java.lang.String,int)").getExecutions()).isEqualTo(1);
+
+		//method override beats class one
+		properties.setProperty(CLASS + ".overridden", "mode=ENTER, notParIdxs=0");
+		LogOverrides.set(properties);
+		EventStoringAppender.getEvents().clear();
+		overridden("secret", 2);
+		assertThat(messages()).containsExactly(">>overridden(String,2)>>");
+
+		//back to annotation
+		LogOverrides.clear();
+		EventStoringAppender.getEvents().clear();
+		overridden("secret", 3);
+		assertThat(messages()).containsExactly(">>overridden(String,Integer)>>", "<<overridden: String<<");
+	}
+
+	@Test
+	public void testOutOfRange() {
+		Properties properties = new Properties();
+		properties.setProperty(CLASS + ".overridden", "mode=EXIT, maxLength=4294967297");
+		LogOverrides.set(properties);
+		EventStoringAppender.getEvents().clear();
+
+		overridden("secret", 1);
+		//not wrapped to maxLength=1
+		assertThat(messages()).containsExactly("<<overridden: String<<");
+		List<String> warnings = new ArrayList<String>();
+		for (ILoggingEvent event : EventStoringAppender.getEvents()) {
+			if (event.getLoggerName().equals(LogOverrides.class.getName())) {
+				warnings.add(event.getMessage());
+			}
+		}
+		assertThat(warnings).containsExactly("Invalid override " + CLASS + ".overridden maxLength=4294967297");
+	}
+
+	@Test
+	public void testWatch() throws Exception {
+		File file = File.createTempFile("LogAspect", ".properties");
+		file.deleteOnExit();
+		write(file, CLASS + "=mode=ENTER", 10000);
+		LogOverrides.watch(file, 50, TimeUnit.MILLISECONDS);
+		EventStoringAppender.getEvents().clear();
+		overridden("x", 1);
+		assertThat(messages()).containsExactly(">>overridden(String,Integer)>>");
+
+		write(file, CLASS + "=mode=EXIT", 20000);
+		for (int i = 0; i < 100; ++i) {
+			EventStoringAppender.getEvents().clear();
+			overridden("x", 1);
+			if (messages().get(0).startsWith("<<")) {
+				break;
+			}
+			Thread.sleep(50);
+		}
+		assertThat(messages()).containsExactly("<<overridden: String<<");
+
+		//file deleted - no overrides
+		assertThat(file.delete()).isTrue();
+		for (int i = 0; i < 100; ++i) {
+			EventStoringAppender.getEvents().clear();
+			overridden("x", 1);
+			if (messages().size() == 2) {
+				break;
+			}
+			Thread.sleep(50);
+		}
+		assertThat(messages()).hasSize(2);
+	}
+
+	private static void write(File file, String line, long lastModified) throws IOException {
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(line.getBytes("UTF-8"));
+		} finally {
+			stream.close();
+		}
+		file.setLastModified(lastModified); //do not depend on file system time resolution
+	}
+
+	/**
+	 * Without execution time
+	 */
+	private static List<String> messages() {
+		List<String> messages = new ArrayList<String>();
+		for (ILoggingEvent event : EventStoringAppender.getEvents()) {
+			if (event.getLoggerName().equals(CLASS)) {
+				messages.add(event.getMessage().replaceAll(" \\d+ms$", ""));
+			}
+		}
+		return messages;
+	}
+
+	@Logged
+	private String overridden(String param1, int param2) {
+		return param1 + param2;
+	}
+}
@@ -0,0 +1,156 @@
+package net.anthavio.aspect.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import net.anthavio.aspect.ApiPolicyOverride;
+import net.anthavio.aspect.WeavingAgent;
+
+/**
+ * Compares startup time of the same workload (loading every class from jars on classpath) in separate JVMs
+ * <ul>
+ * <li>CTW - compile-time woven, no agent</li>
+ * <li>naive LTW - AspectJ agent, aspects declared, no weaver scope</li>
+ * <li>tuned LTW - {@link WeavingAgent} with prefilter, aop-ltw.xml profile and persistent cache (cold and warm)</li>
+ * </ul>
+ *
+ * Not a test - run main() manually with path to aspectjweaver (or aspectjtools) jar
+ * java -cp target/classes:target/test-classes:... net.anthavio.aspect.test.LtwStartupBenchmark aspectjweaver.jar [runs]
+ *
+ * @author vanek
+ *
+ */
+public class LtwStartupBenchmark {
+
+	@ApiPolicyOverride
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.err.println("Usage: java " + LtwStartupBenchmark.class.getName() + " <aspectjweaver.jar> [runs]");
+			System.exit(1);
+		}
+		File weaverJar = new File(args[0]);
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		String classpath = System.getProperty("java.class.path") + File.pathSeparator + weaverJar.getAbsolutePath();
+
+		File dir = File.createTempFile("ltw-benchmark", "");
+		dir.delete();
+		dir.mkdirs();
+		//manifest only jars - agent classes are loaded from classpath
+		File aspectjAgent = agentJar(new File(dir, "aspectj-agent.jar"), "org.aspectj.weaver.loadtime.Agent");
+		File tunedAgent = agentJar(new File(dir, "tuned-agent.jar"), WeavingAgent.class.getName());
+		File naiveXml = new File(dir, "aop-naive.xml");
+		FileWriter writer = new FileWriter(naiveXml);
+		try {
+			writer.write("<aspectj><aspects><aspect name=\"net.anthavio.aspect.LogAspect\"/>"
+					+ "<aspect name=\"net.anthavio.aspect.NullCheckAspect\"/></aspects>"
+					+ "<weaver options=\"-Xlint:ignore\"/></aspectj>");
+		} finally {
+			writer.close();
+		}
+		File cache = new File(dir, "cache");
+
+		System.out.println("configuration        startup ms  classes");
+		report("CTW", runs, classpath);
+		report("naive LTW", runs, classpath, "-javaagent:" + aspectjAgent, "-Daj.weaving.cache.enabled=false",
+				"-Dorg.aspectj.weaver.loadtime.configuration=file:" + naiveXml);
+		report("tuned LTW cold", 1, classpath, "-javaagent:" + tunedAgent + "=cache=" + cache);
+		report("tuned LTW warm", runs, classpath, "-javaagent:" + tunedAgent + "=cache=" + cache);
+		report("tuned LTW nocache", runs, classpath, "-javaagent:" + tunedAgent + "=nocache");
+	}
+
+	/**
+	 * Prints best of runs
+	 */
+	@ApiPolicyOverride
+	private static void report(String name, int runs, String classpath, String... jvmArgs) throws Exception {
+		long best = Long.MAX_VALUE;
+		String classes = null;
+		for (int i = 0; i < runs; ++i) {
+			String[] result = fork(classpath, jvmArgs).split(" ");
+			best = Math.min(best, Long.parseLong(result[0]));
+			classes = result[1];
+		}
+		System.out.println(String.format("%-20s %10d  %s", name, best, classes));
+	}
+
+	private static String fork(String classpath, String... jvmArgs) throws Exception {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(Arrays.asList(jvmArgs));
+		command.add("-cp");
+		command.add(classpath);
+		command.add(Workload.class.getName());
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		StringBuilder output = new StringBuilder();
+		String result = null;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith("RESULT ")) {
+				result = line.substring(7);
+			} else {
+				output.append(line).append('\n');
+			}
+		}
+		if (process.waitFor() != 0 || result == null) {
+			throw new IllegalStateException("Workload failed " + command + "\n" + output);
+		}
+		return result;
+	}
+
+	private static File agentJar(File file, String premainClass) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(new Attributes.Name("Premain-Class"), premainClass);
+		new JarOutputStream(new FileOutputStream(file), manifest).close();
+		return file;
+	}
+
+	/**
+	 * Loads (without initialization) every class from jars on classpath, except AspectJ ones
+	 */
+	public static class Workload {
+
+		@ApiPolicyOverride
+		public static void main(String[] args) throws IOException {
+			ClassLoader loader = Workload.class.getClassLoader();
+			int loaded = 0;
+			for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+				if (!entry.endsWith(".jar") || entry.contains("aspectj") || entry.contains("agent")) {
+					continue;
+				}
+				JarFile jar = new JarFile(entry);
+				try {
+					for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+						String name = entries.nextElement().getName();
+						if (name.endsWith(".class") && !name.contains("-")) {
+							try {
+								Class.forName(name.substring(0, name.length() - 6).replace('/', '.'), false, loader);
+								++loaded;
+							} catch (Throwable t) {
+								//missing optional dependency
+							}
+						}
+					}
+				} finally {
+					jar.close();
+				}
+			}
+			System.out.println("RESULT " + ManagementFactory.getRuntimeMXBean().getUptime() + " " + loaded);
+		}
+	}
+}
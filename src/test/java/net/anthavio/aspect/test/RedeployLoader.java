@@ -0,0 +1,45 @@
+package net.anthavio.aspect.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Defines its own copy of single (woven) class and its nested classes or AspectJ closures, everything else is delegated
+ * to parent
+ *
+ * @author vanek
+ *
+ */
+class RedeployLoader extends ClassLoader {
+
+	private final String className;
+
+	RedeployLoader(String className) {
+		super(RedeployLoader.class.getClassLoader());
+		this.className = className;
+	}
+
+	@Override
+	protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		if (!name.equals(className) && !name.startsWith(className + "$")) {
+			return super.loadClass(name, resolve);
+		}
+		Class<?> clazz = findLoadedClass(name);
+		if (clazz == null) {
+			try {
+				InputStream stream = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				for (int read; (read = stream.read(buffer)) != -1;) {
+					bytes.write(buffer, 0, read);
+				}
+				stream.close();
+				clazz = defineClass(name, bytes.toByteArray(), 0, bytes.size());
+			} catch (IOException iox) {
+				throw new ClassNotFoundException(name, iox);
+			}
+		}
+		return clazz;
+	}
+}
@@ -0,0 +1,157 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.StatsFile;
+import net.anthavio.aspect.StatsFileReader;
+import net.anthavio.aspect.StatsFileReader.Slot;
+import net.anthavio.aspect.StatsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class StatsFileTest {
+
+	private static final String PUBLISHED = StatsFileTest.class.getName() + ".published(int)";
+
+	@Before
+	public void before() {
+		StatsRegistry.reset(PUBLISHED); //test order independent counts
+	}
+
+	@After
+	public void after() {
+		StatsFile.stop();
+	}
+
+	@Test
+	public void testPublishAndRead() throws IOException {
+		File file = File.createTempFile("LogAspect", ".stats");
+		file.deleteOnExit();
+		published(1000);
+		StatsFile.start(file, 1000, 60000);
+		assertThat(StatsFile.getFile()).isEqualTo(file);
+
+		StatsFileReader reader = new StatsFileReader(file);
+		assertThat(reader.read()).isEmpty(); //nothing published yet
+
+		published(3000);
+		try {
+			published(-1);
+		} catch (IllegalArgumentException iax) {
+			//expected
+		}
+		StatsFile.publish();
+
+		Slot slot = find(reader);
+		assertThat(slot.getExecutions()).isEqualTo(3);
+		assertThat(slot.getExceptions()).isEqualTo(1);
+		assertThat(slot.getHistogram().getCount()).isEqualTo(2);
+		assertThat(slot.getHistogram().getMax()).isEqualTo(3000);
+		assertThat(slot.getLastExecutionMillis()).isGreaterThan(0);
+		assertThat(reader.getUpdateMillis()).isGreaterThanOrEqualTo(reader.getStartMillis());
+
+		//final values are published on stop and stay readable
+		published(2000);
+		StatsFile.stop();
+		assertThat(StatsFile.getFile()).isNull();
+		slot = find(new StatsFileReader(file));
+		assertThat(slot.getExecutions()).isEqualTo(4);
+	}
+
+	/**
+	 * Restarted writer clears the file in place, so reader opened before keeps working
+	 */
+	@Test
+	public void testRestart() throws IOException {
+		File file = File.createTempFile("LogAspect", ".stats");
+		file.deleteOnExit();
+		published(1000);
+		StatsFile.start(file, 100, 60000);
+		StatsFile.publish();
+		StatsFileReader reader = new StatsFileReader(file);
+		assertThat(find(reader)).isNotNull();
+
+		StatsFile.start(file, 100, 60000);
+		assertThat(reader.read()).isEmpty();
+		StatsFile.publish();
+		assertThat(find(reader)).isNotNull();
+	}
+
+	/**
+	 * Slot of evicted statistics is skipped by reader and reused by another method when the file is full
+	 */
+	@Test
+	public void testEvictedSlotReused() throws IOException {
+		File file = File.createTempFile("LogAspect", ".stats");
+		file.deleteOnExit();
+		published(1000);
+		StatsFile.start(file, StatsRegistry.getNames().size(), 60000);
+		StatsFile.publish();
+		StatsFileReader reader = new StatsFileReader(file);
+		int used = reader.read().size();
+		assertThat(find(reader)).isNotNull();
+
+		StatsRegistry.remove(PUBLISHED);
+		StatsFile.publish();
+		assertThat(find(reader)).isNull();
+		assertThat(reader.read()).hasSize(used - 1);
+
+		replacement();
+		StatsFile.publish();
+		assertThat(reader.read()).hasSize(used);
+		boolean found = false;
+		for (Slot slot : reader.read()) {
+			found |= slot.getName().equals(StatsFileTest.class.getName() + ".replacement()");
+		}
+		assertThat(found).isTrue();
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotStatsFile() throws IOException {
+		File file = File.createTempFile("LogAspect", ".stats");
+		file.deleteOnExit();
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(new byte[100]);
+		} finally {
+			stream.close();
+		}
+		new StatsFileReader(file);
+	}
+
+	private static Slot find(StatsFileReader reader) {
+		for (Slot slot : reader.read()) {
+			if (slot.getName().equals(PUBLISHED)) {
+				return slot;
+			}
+		}
+		return null;
+	}
+
+	@Logged(statistics = true)
+	private void replacement() {
+	}
+
+	/**
+	 * Takes nanos on ManualClock, negative fails
+	 */
+	@Logged(statistics = true, clock = LogAspectTest.ManualClock.class)
+	private void published(int nanos) {
+		if (nanos < 0) {
+			throw new IllegalArgumentException("Negative");
+		}
+		LogAspectTest.ManualClock.nanos += nanos;
+	}
+}
@@ -0,0 +1,303 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.anthavio.aspect.CallStats;
+import net.anthavio.aspect.ExecStats;
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.StatsRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class StatsRegistryTest {
+
+	private static final String COUNTED = StatsRegistryTest.class.getName() + ".counted(java.lang.String,int)";
+
+	@After
+	public void after() {
+		StatsRegistry.setJmxEnabled(false);
+	}
+
+	@Test
+	public void testStatistics() {
+		counted("x", 1);
+		StatsRegistry.reset(COUNTED);
+
+		counted("x", 1);
+		counted("y", 2);
+		try {
+			counted(null, 3);
+		} catch (IllegalArgumentException iax) {
+			//expected
+		}
+
+		assertThat(StatsRegistry.getNames()).contains(COUNTED);
+		ExecStats.Snapshot snapshot = StatsRegistry.snapshot(COUNTED);
+		assertThat(snapshot.getExecutions()).isEqualTo(3);
+		assertThat(snapshot.getExceptions()).isEqualTo(1);
+		assertThat(snapshot.getHistogram().getCount()).isEqualTo(2);
+		assertThat(snapshot.getExceptionHistogram().getCount()).isEqualTo(1);
+		assertThat(StatsRegistry.snapshot()).containsKey(COUNTED);
+
+		assertThat(StatsRegistry.reset(COUNTED)).isTrue();
+		assertThat(StatsRegistry.get(COUNTED).getExecutions()).isEqualTo(0);
+		assertThat(StatsRegistry.reset("does.not.Exist()")).isFalse();
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		counted("x", 1);
+		counted("x", 1);
+		//registers existing statistics immediately
+		StatsRegistry.setJmxEnabled(true);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(StatsRegistry.JMX_DOMAIN + ":type=ExecStats,class="
+				+ StatsRegistryTest.class.getName() + ",method=" + ObjectName.quote("counted(java.lang.String,int)"));
+		assertThat(server.isRegistered(name)).isTrue();
+		assertThat((Long) server.getAttribute(name, "Executions")).isGreaterThanOrEqualTo(2);
+		assertThat((Long) server.getAttribute(name, "P99Nanos")).isGreaterThan(0);
+
+		server.invoke(name, "reset", null, null);
+		assertThat((Long) server.getAttribute(name, "Executions")).isEqualTo(0);
+
+		StatsRegistry.setJmxEnabled(false);
+		assertThat(server.isRegistered(name)).isFalse();
+	}
+
+	/**
+	 * MBean for statistics created while JMX is enabled is registered in background
+	 */
+	@Test
+	public void testLazyRegistration() throws Exception {
+		StatsRegistry.setJmxEnabled(true);
+		lazy();
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(StatsRegistry.JMX_DOMAIN + ":type=ExecStats,class="
+				+ StatsRegistryTest.class.getName() + ",method=" + ObjectName.quote("lazy()"));
+		for (int i = 0; i < 50 && !server.isRegistered(name); ++i) {
+			Thread.sleep(100);
+		}
+		assertThat(server.isRegistered(name)).isTrue();
+	}
+
+	/**
+	 * outer takes 10 ns itself and calls inner twice, inner takes 20 ns (and fails second time)
+	 */
+	@Test
+	public void testCallTree() {
+		String outerName = StatsRegistryTest.class.getName() + ".outer()";
+		String innerName = StatsRegistryTest.class.getName() + ".inner(boolean)";
+		outer();
+		StatsRegistry.reset(outerName);
+		StatsRegistry.reset(innerName);
+
+		outer();
+
+		ExecStats outer = StatsRegistry.get(outerName);
+		assertThat(outer.getExecutions()).isEqualTo(1);
+		assertThat(outer.getTotalNanos()).isEqualTo(50);
+		assertThat(outer.getTotalSelfNanos()).isEqualTo(10);
+		CallStats edge = outer.getCallees().get(innerName);
+		assertThat(edge.getCalls()).isEqualTo(2);
+		assertThat(edge.getTotalNanos()).isEqualTo(40);
+		assertThat(outer.snapshot().getCalleeCalls()).containsEntry(innerName, 2L);
+
+		ExecStats inner = StatsRegistry.get(innerName);
+		assertThat(inner.getExecutions()).isEqualTo(2);
+		assertThat(inner.getExceptions()).isEqualTo(1);
+		assertThat(inner.getTotalSelfNanos()).isEqualTo(40);
+		assertThat(inner.getCallees()).isEmpty();
+	}
+
+	@Logged(statistics = true, clock = LogAspectTest.ManualClock.class)
+	private void outer() {
+		LogAspectTest.ManualClock.nanos += 5;
+		inner(false);
+		try {
+			inner(true);
+		} catch (IllegalStateException isx) {
+			//expected
+		}
+		LogAspectTest.ManualClock.nanos += 5;
+	}
+
+	@Logged(statistics = true, clock = LogAspectTest.ManualClock.class)
+	private void inner(boolean fail) {
+		LogAspectTest.ManualClock.nanos += 20;
+		if (fail) {
+			throw new IllegalStateException("Failing");
+		}
+	}
+
+	/**
+	 * Full registry gives no statistics to new methods. Removed statistics is released and its room given to next method.
+	 * Idle time is set long, so statistics of other tests are never evicted
+	 */
+	@Test
+	public void testLimit() throws Exception {
+		String first = StatsRegistryTest.class.getName() + ".first()";
+		String second = StatsRegistryTest.class.getName() + ".second()";
+		int max = StatsRegistry.getMaxStats();
+		long idle = StatsRegistry.getEvictionIdleMillis();
+		try {
+			StatsRegistry.setEvictionIdle(1, TimeUnit.HOURS);
+			first();
+			StatsRegistry.setMaxStats(StatsRegistry.getNames().size());
+			long rejections = StatsRegistry.getRejections();
+			second();
+			assertThat(StatsRegistry.get(second)).isNull();
+			assertThat(StatsRegistry.getRejections()).isEqualTo(rejections + 1);
+
+			WeakReference<ExecStats> removed = new WeakReference<ExecStats>(StatsRegistry.get(first));
+			assertThat(StatsRegistry.remove(first)).isTrue();
+			second();
+			assertThat(StatsRegistry.get(second).getExecutions()).isEqualTo(1);
+			first(); //plan rebuilt without statistics
+			assertThat(StatsRegistry.get(first)).isNull();
+			for (int i = 0; i < 50 && removed.get() != null; ++i) {
+				System.gc();
+				Thread.sleep(20);
+			}
+			assertThat(removed.get()).isNull();
+		} finally {
+			StatsRegistry.setMaxStats(max);
+			StatsRegistry.setEvictionIdle(idle, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Test
+	public void testOverloads() {
+		overloaded(new java.util.Date());
+		overloaded(new java.sql.Date(0));
+		assertThat(StatsRegistry.getNames()).contains(StatsRegistryTest.class.getName() + ".overloaded(java.util.Date)",
+				StatsRegistryTest.class.getName() + ".overloaded(java.sql.Date)");
+	}
+
+	/**
+	 * Calls into callees over limit are summed in single CallStats
+	 */
+	@Test
+	public void testCalleesLimit() throws Exception {
+		String fanOutName = StatsRegistryTest.class.getName() + ".fanOut()";
+		fanOut();
+		Map<String, CallStats> callees = StatsRegistry.get(fanOutName).getCallees();
+		assertThat(callees).hasSize(17);
+		assertThat(callees).containsKey(Callees.class.getName() + ".c14()");
+		assertThat(callees).doesNotContainKey(Callees.class.getName() + ".c15()");
+		assertThat(callees.get(CallStats.OTHER).getCalls()).isEqualTo(3);
+		StatsRegistry.reset(fanOutName);
+	}
+
+	/**
+	 * Calls 19 distinct callees - constructor and 18 methods
+	 */
+	@Logged(statistics = true)
+	private void fanOut() throws Exception {
+		Callees callees = new Callees();
+		for (int i = 0; i < 18; ++i) {
+			Callees.class.getMethod(String.format("c%02d", i)).invoke(callees);
+		}
+	}
+
+	@Logged(statistics = true)
+	private void overloaded(java.util.Date date) {
+	}
+
+	@Logged(statistics = true)
+	private void overloaded(java.sql.Date date) {
+	}
+
+	@Logged(statistics = true)
+	private void first() {
+	}
+
+	@Logged(statistics = true)
+	private void second() {
+	}
+
+	@Logged(statistics = true)
+	private String counted(String param1, int param2) {
+		if (param1 == null) {
+			throw new IllegalArgumentException("Null");
+		}
+		return param1 + param2;
+	}
+
+	@Logged(statistics = true)
+	private void lazy() {
+	}
+
+	@Logged(statistics = true)
+	public static class Callees {
+
+		public void c00() {
+		}
+
+		public void c01() {
+		}
+
+		public void c02() {
+		}
+
+		public void c03() {
+		}
+
+		public void c04() {
+		}
+
+		public void c05() {
+		}
+
+		public void c06() {
+		}
+
+		public void c07() {
+		}
+
+		public void c08() {
+		}
+
+		public void c09() {
+		}
+
+		public void c10() {
+		}
+
+		public void c11() {
+		}
+
+		public void c12() {
+		}
+
+		public void c13() {
+		}
+
+		public void c14() {
+		}
+
+		public void c15() {
+		}
+
+		public void c16() {
+		}
+
+		public void c17() {
+		}
+	}
+}
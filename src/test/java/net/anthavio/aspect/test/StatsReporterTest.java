@@ -0,0 +1,115 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.StatsRegistry;
+import net.anthavio.aspect.StatsReporter;
+import net.anthavio.aspect.StatsReporter.Interval;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class StatsReporterTest {
+
+	private static final String REPORTED = StatsReporterTest.class.getName() + ".reported(int)";
+
+	@Before
+	public void before() {
+		EventStoringAppender.getEvents().clear();
+	}
+
+	@After
+	public void after() {
+		StatsReporter.stop();
+	}
+
+	@Test
+	public void testInterval() {
+		reported(1000);
+		reported(3000);
+		StatsReporter.collect();
+
+		reported(2000);
+		reported(4000);
+		try {
+			reported(-1);
+		} catch (IllegalArgumentException iax) {
+			//expected
+		}
+
+		Interval interval = find(StatsReporter.collect());
+		assertThat(interval.getCalls()).isEqualTo(3);
+		assertThat(interval.getErrors()).isEqualTo(1);
+		assertThat(interval.getMeanNanos()).isEqualTo(2000);
+		assertThat(interval.getMaxNanos()).isGreaterThanOrEqualTo(4000).isLessThan(4300);
+		assertThat(interval.getP99Nanos()).isEqualTo(interval.getMaxNanos());
+		assertThat(interval.getCallsPerSecond()).isGreaterThan(0);
+
+		//nothing executed since
+		assertThat(find(StatsReporter.collect())).isNull();
+
+		//reset is not negative interval
+		reported(1000);
+		StatsRegistry.reset(REPORTED);
+		reported(5000);
+		interval = find(StatsReporter.collect());
+		assertThat(interval.getCalls()).isEqualTo(1);
+		assertThat(interval.getMeanNanos()).isEqualTo(5000);
+	}
+
+	@Test
+	public void testReport() {
+		StatsReporter.collect();
+		reported(1000000);
+		StatsReporter.report();
+
+		String report = null;
+		for (ILoggingEvent event : EventStoringAppender.getEvents()) {
+			if (event.getLoggerName().equals(StatsReporter.class.getName())) {
+				report = event.getFormattedMessage();
+			}
+		}
+		assertThat(report).contains("calls/s").contains("p99 ms").contains(REPORTED).contains("1.000");
+	}
+
+	@Test
+	public void testStartStop() {
+		assertThat(StatsReporter.isRunning()).isFalse();
+		StatsReporter.start(1, TimeUnit.HOURS);
+		assertThat(StatsReporter.isRunning()).isTrue();
+		StatsReporter.stop();
+		assertThat(StatsReporter.isRunning()).isFalse();
+	}
+
+	private static Interval find(List<Interval> intervals) {
+		for (Interval interval : intervals) {
+			if (interval.getName().equals(REPORTED)) {
+				return interval;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Takes nanos on ManualClock, negative fails
+	 */
+	@Logged(statistics = true, clock = LogAspectTest.ManualClock.class)
+	private void reported(int nanos) {
+		if (nanos < 0) {
+			throw new IllegalArgumentException("Negative");
+		}
+		LogAspectTest.ManualClock.nanos += nanos;
+	}
+}
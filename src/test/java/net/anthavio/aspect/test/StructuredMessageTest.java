@@ -0,0 +1,104 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.Logged.Format;
+import net.anthavio.aspect.Logged.Mode;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * 
+ * @author vanek
+ *
+ */
+public class StructuredMessageTest {
+
+	private static final String CLASS = StructuredMessageTest.class.getName();
+
+	LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+	@BeforeClass
+	public static void beforeClass() {
+		HibernateHelper.isHibernatePresent(); //static initializer logs
+	}
+
+	@Before
+	public void before() {
+		lc.getLogger(StructuredMessageTest.class).setLevel(Level.DEBUG);
+		EventStoringAppender.getEvents().clear();
+	}
+
+	@Test
+	public void testKeyValue() {
+		keyValue("with space", 5);
+		List<ILoggingEvent> events = EventStoringAppender.getEvents();
+		assertThat(events.get(0).getMessage()).isEqualTo(
+				"phase=enter class=" + CLASS + " method=keyValue arg0=\"with space\" arg1=5");
+		assertThat(events.get(1).getMessage()).matches(
+				"phase=exit class=" + CLASS + " method=keyValue result=\"with space5\" duration=\\d+ unit=ms");
+	}
+
+	@Test
+	public void testJson() {
+		json("quote\" and \\ and\nnewline", 5, null);
+		List<ILoggingEvent> events = EventStoringAppender.getEvents();
+		assertThat(events.get(0).getMessage()).isEqualTo(
+				"{\"phase\":\"enter\",\"class\":\"" + CLASS
+						+ "\",\"method\":\"json\",\"args\":[\"quote\\\" and \\\\ and\\nnewline\",5,null]}");
+		assertThat(events.get(1).getMessage()).matches(
+				"\\{\"phase\":\"exit\",\"class\":\"" + CLASS + "\",\"method\":\"json\",\"result\":5,\"duration\":\\d+,\"unit\":\"ms\"\\}");
+	}
+
+	/**
+	 * INFO level - types only
+	 */
+	@Test
+	public void testJsonTypes() {
+		lc.getLogger(StructuredMessageTest.class).setLevel(Level.INFO);
+		json("value", 5, null);
+		List<ILoggingEvent> events = EventStoringAppender.getEvents();
+		assertThat(events.get(0).getMessage()).endsWith("\"args\":[\"String\",\"Integer\",null]}");
+	}
+
+	@Test
+	public void testException() {
+		try {
+			failing();
+		} catch (IllegalStateException isx) {
+			//expected
+		}
+		List<ILoggingEvent> events = EventStoringAppender.getEvents();
+		assertThat(events.size()).isEqualTo(1);
+		assertThat(events.get(0).getLevel()).isEqualTo(Level.ERROR);
+		assertThat(events.get(0).getMessage()).matches(
+				"\\{\"phase\":\"error\",\"class\":\"" + CLASS + "\",\"method\":\"failing\",\"exception\":\"java.lang.IllegalStateException\""
+						+ ",\"message\":\"Failing\",\"duration\":\\d+,\"unit\":\"ms\",\"executions\":0,\"exceptions\":0\\}");
+	}
+
+	@Logged(format = Format.KEY_VALUE)
+	private String keyValue(String string, int number) {
+		return string + number;
+	}
+
+	@Logged(format = Format.JSON)
+	private int json(String string, int number, Object nothing) {
+		return number;
+	}
+
+	@Logged(format = Format.JSON, mode = Mode.EXIT, statistics = true)
+	private void failing() {
+		throw new IllegalStateException("Failing");
+	}
+}
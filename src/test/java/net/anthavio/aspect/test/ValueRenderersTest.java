@@ -0,0 +1,259 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.anthavio.HibernateHelper;
+import net.anthavio.aspect.Logged;
+import net.anthavio.aspect.ValueRenderer;
+import net.anthavio.aspect.ValueRenderers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+
+/**
+ * 
+ * @author vanek
+ *
+ */
+public class ValueRenderersTest {
+
+	LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+	@BeforeClass
+	public static void beforeClass() {
+		HibernateHelper.isHibernatePresent(); //static initializer logs
+	}
+
+	@Before
+	public void before() {
+		lc.getLogger(ValueRenderersTest.class).setLevel(Level.DEBUG);
+		EventStoringAppender.getEvents().clear();
+	}
+
+	@After
+	public void after() {
+		ValueRenderers.unregister(Payload.class);
+		ValueRenderers.unregister(Collection.class);
+	}
+
+	@Test
+	public void testPreview() {
+		List<String> list = Arrays.asList("a", "b", "c", "d", "e");
+		preview(list);
+		assertThat(enterMessage()).isEqualTo(">>preview(ArrayList[5]{a,b,c,...})>>");
+
+		EventStoringAppender.getEvents().clear();
+		Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+		map.put("x", 1);
+		map.put("y", 2);
+		preview(map);
+		assertThat(enterMessage()).isEqualTo(">>preview(LinkedHashMap[2]{x=1,y=2})>>");
+
+		EventStoringAppender.getEvents().clear();
+		preview(new int[] { 1, 2, 3, 4 });
+		assertThat(enterMessage()).isEqualTo(">>preview(int[4]{1,2,3,...})>>");
+
+		//without preview
+		EventStoringAppender.getEvents().clear();
+		plain(list);
+		assertThat(enterMessage()).isEqualTo(">>plain(ArrayList[5])>>");
+	}
+
+	@Test
+	public void testPreviewWithinMaxLength() {
+		List<String> list = Arrays.asList("aaaaaaaaaa", "bbbbbbbbbb", "cccccccccc");
+		short20(list);
+		assertThat(enterMessage()).isEqualTo(">>short20(ArrayList[3]{aaaaaaa...10,...})>>");
+	}
+
+	@Test
+	public void testCharSequence() {
+		StringBuilder huge = new StringBuilder();
+		for (int i = 0; i < 10000; ++i) {
+			huge.append('x');
+		}
+		short20(huge);
+		assertThat(enterMessage()).isEqualTo(">>short20(xxxxxxxxxxxxxxxxxxxx...10000)>>");
+	}
+
+	@Test
+	public void testUnsized() {
+		ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>(Arrays.asList("a", "b"));
+		plain(queue);
+		assertThat(enterMessage()).isEqualTo(">>plain(ConcurrentLinkedQueue[?])>>");
+
+		EventStoringAppender.getEvents().clear();
+		preview(queue);
+		assertThat(enterMessage()).isEqualTo(">>preview(ConcurrentLinkedQueue[?]{a,b})>>");
+	}
+
+	@Test
+	public void testEntity() {
+		Customer customer = new Customer(5L, "John");
+		Order order = new Order(1L, "NEW", customer);
+		customer.lastOrder = order; //cycle
+
+		plain(order);
+		//toString() is not called, transient fields are skipped
+		assertThat(enterMessage()).isEqualTo(
+				">>plain(Order{id=1,status=NEW,customer=Customer{id=5,name=John,lastOrder=Order{...}},items=ArrayList[2]})>>");
+
+		//budget
+		EventStoringAppender.getEvents().clear();
+		short20(order);
+		assertThat(enterMessage()).isEqualTo(">>short20(Order{id=1,status=NE...3,...})>>");
+	}
+
+	@Test
+	public void testHibernateAbsent() {
+		assertThat(HibernateHelper.isHibernatePresent()).isFalse();
+		assertThat(HibernateHelper.classify(ArrayList.class)).isEqualTo(HibernateHelper.Kind.PLAIN);
+		Object value = new Object();
+		assertThat(HibernateHelper.getHibernateProxiedValue(value)).isSameAs(value);
+	}
+
+	@Test
+	@SuppressWarnings("rawtypes")
+	public void testCustomRenderer() {
+		Payload payload = new Payload("<xml>" + "yyyyyyyyyyyyyyyyyyyy" + "</xml>");
+		plain(payload);
+		assertThat(enterMessage()).isEqualTo(">>plain(toString)>>");
+
+		ValueRenderers.register(Payload.class, new ValueRenderer<Payload>() {
+
+			@Override
+			public void render(Payload value, StringBuilder sb, int maxLength) {
+				sb.append("Payload:").append(value.xml);
+			}
+		});
+		EventStoringAppender.getEvents().clear();
+		plain(payload);
+		assertThat(enterMessage()).isEqualTo(">>plain(Payload:<xml>yyyyyyyyyyyyyyyyyyyy</xml>)>>");
+
+		//cut by maxLength
+		EventStoringAppender.getEvents().clear();
+		short20(payload);
+		assertThat(enterMessage()).isEqualTo(">>short20(Payload:<xml>yyyyyyy...39)>>");
+
+		//registered for interface
+		ValueRenderers.register(Collection.class, new ValueRenderer<Collection>() {
+
+			@Override
+			public void render(Collection value, StringBuilder sb, int maxLength) {
+				sb.append("Collection of ").append(value.size());
+			}
+		});
+		EventStoringAppender.getEvents().clear();
+		plain(new ArrayList<String>(Arrays.asList("a")));
+		assertThat(enterMessage()).isEqualTo(">>plain(Collection of 1)>>");
+
+		assertThat(ValueRenderers.unregister(Payload.class)).isTrue();
+		EventStoringAppender.getEvents().clear();
+		plain(payload);
+		assertThat(enterMessage()).isEqualTo(">>plain(toString)>>");
+	}
+
+	private String enterMessage() {
+		return EventStoringAppender.getEvents().get(0).getMessage();
+	}
+
+	@Logged(preview = 3, logRetVal = false)
+	private void preview(Object value) {
+	}
+
+	@Logged(logRetVal = false)
+	private void plain(Object value) {
+	}
+
+	@Logged(maxLength = 20, preview = 3, logRetVal = false)
+	private void short20(Object value) {
+	}
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@interface Entity {
+	}
+
+	@Retention(RetentionPolicy.RUNTIME)
+	@interface Transient {
+	}
+
+	static class BaseEntity {
+
+		static final String IGNORED = "static";
+
+		Long id;
+
+		BaseEntity(Long id) {
+			this.id = id;
+		}
+
+		@Override
+		public String toString() {
+			throw new IllegalStateException("Lazy loading from toString()");
+		}
+	}
+
+	@Entity
+	static class Order extends BaseEntity {
+
+		String status;
+
+		Customer customer;
+
+		List<String> items = new ArrayList<String>(Arrays.asList("a", "b"));
+
+		@Transient
+		String computed = "computed";
+
+		Order(Long id, String status, Customer customer) {
+			super(id);
+			this.status = status;
+			this.customer = customer;
+		}
+	}
+
+	@Entity
+	static class Customer extends BaseEntity {
+
+		String name;
+
+		transient String cached = "cached";
+
+		Order lastOrder;
+
+		Customer(Long id, String name) {
+			super(id);
+			this.name = name;
+		}
+	}
+
+	static class Payload {
+
+		private final String xml;
+
+		Payload(String xml) {
+			this.xml = xml;
+		}
+
+		@Override
+		public String toString() {
+			return "toString";
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package net.anthavio.aspect.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import net.anthavio.aspect.LogAspect;
+import net.anthavio.aspect.NullCheck;
+import net.anthavio.aspect.NullCheckAspect;
+import net.anthavio.aspect.WeavingAgent;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import example.Example;
+
+/**
+ *
+ * @author vanek
+ *
+ */
+public class WeavingAgentTest {
+
+	@Test
+	public void testIsCandidate() throws IOException {
+		assertThat(WeavingAgent.isCandidate(classfile(Example.class))).isTrue(); //@Logged method, @NullCheck parameter
+		assertThat(WeavingAgent.isCandidate(classfile(NullCheckedReturn.class))).isTrue();
+		assertThat(WeavingAgent.isCandidate(classfile(LogAspect.class))).isTrue(); //@Aspect
+		assertThat(WeavingAgent.isCandidate(classfile(EventStoringAppender.class))).isFalse();
+		assertThat(WeavingAgent.isCandidate(classfile(String.class))).isFalse();
+		assertThat(WeavingAgent.isCandidate(new byte[0])).isFalse();
+	}
+
+	@Test
+	public void testPrefilter() throws Exception {
+		final List<String> woven = new ArrayList<String>();
+		ClassFileTransformer weaver = new ClassFileTransformer() {
+
+			@Override
+			public byte[] transform(ClassLoader loader, String className, Class<?> redefined, ProtectionDomain domain,
+					byte[] classfile) {
+				woven.add(className);
+				return classfile;
+			}
+		};
+		ClassFileTransformer prefilter = new WeavingAgent.Prefilter(weaver);
+		ClassLoader loader = getClass().getClassLoader();
+		long skipped = WeavingAgent.Prefilter.getSkipped();
+
+		byte[] example = classfile(Example.class);
+		assertThat(prefilter.transform(loader, "example/Example", null, null, example)).isSameAs(example);
+		assertThat(prefilter.transform(loader, "x/Plain", null, null, classfile(EventStoringAppender.class))).isNull();
+		assertThat(prefilter.transform(null, "java/lang/String", null, null, classfile(String.class))).isNull();
+		assertThat(woven).containsExactly("example/Example");
+		assertThat(WeavingAgent.Prefilter.getSkipped() - skipped).isEqualTo(2);
+	}
+
+	@Test
+	public void testProfile() throws Exception {
+		InputStream stream = LogAspect.class.getResourceAsStream("/META-INF/aop-ltw.xml");
+		assertThat(stream).isNotNull();
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setValidating(false);
+		factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+		Document document = factory.newDocumentBuilder().parse(stream);
+		NodeList aspects = document.getElementsByTagName("aspect");
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < aspects.getLength(); ++i) {
+			names.add(aspects.item(i).getAttributes().getNamedItem("name").getNodeValue());
+		}
+		assertThat(names).containsExactly(LogAspect.class.getName(), NullCheckAspect.class.getName());
+	}
+
+	private static byte[] classfile(Class<?> clazz) throws IOException {
+		InputStream stream = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class");
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		} finally {
+			stream.close();
+		}
+	}
+
+	static class NullCheckedReturn {
+
+		@NullCheck
+		public String value() {
+			return "x";
+		}
+	}
+}